@@ -0,0 +1,159 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	AreaIndex.java - A coarse grid index of the protected areas, for range queries.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.risingworld.api.utils.Utils.ChunkUtils;
+import net.risingworld.api.utils.Vector3f;
+import net.risingworld.api.utils.Vector3i;
+
+/**
+ * A grid index of the protected areas, to find the areas which may contain
+ * a point or intersect a box without scanning all of them.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>The world is divided into square regions of (2^REGION_SHIFT)^2 chunk
+ * columns and each area is listed in every region it overlaps. Queries return
+ * candidates: the areas listed in the regions touched by the query; callers
+ * still have to check the exact extent of each of them.
+ */
+class AreaIndex
+{
+	// Constants
+	private static final	int		REGION_SHIFT	= 3;		// regions are 8 x 8 chunk columns
+
+	// Fields
+	private static final	Map<Long,List<ProtArea>>	regions	= new HashMap<>();
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Adds an area to the index.
+	 * @param	area	the area to add.
+	 */
+	static synchronized void add(ProtArea area)
+	{
+		int[]	r	= getRegionExtent(area);
+		for (int x = r[0]; x <= r[2]; x++)
+			for (int z = r[1]; z <= r[3]; z++)
+			{
+				Long			key		= key(x, z);
+				List<ProtArea>	region	= regions.get(key);
+				if (region == null)
+				{
+					region	= new ArrayList<>(4);
+					regions.put(key, region);
+				}
+				region.add(area);
+			}
+	}
+
+	/**
+	 * Removes an area from the index.
+	 * @param	area	the area to remove; it must have the same extent it had when added.
+	 */
+	static synchronized void remove(ProtArea area)
+	{
+		int[]	r	= getRegionExtent(area);
+		for (int x = r[0]; x <= r[2]; x++)
+			for (int z = r[1]; z <= r[3]; z++)
+			{
+				Long			key		= key(x, z);
+				List<ProtArea>	region	= regions.get(key);
+				if (region == null)
+					continue;
+				// areas are removed by identity, as equal RW areas may be distinct ProtArea's
+				for (int i = region.size() - 1; i >= 0; i--)
+					if (region.get(i) == area)
+						region.remove(i);
+				if (region.isEmpty())
+					regions.remove(key);
+			}
+	}
+
+	/**
+	 * Empties the index.
+	 */
+	static synchronized void clear()
+	{
+		regions.clear();
+	}
+
+	/**
+	 * Returns the areas which may contain a point.
+	 * @param	point	the point, in global coordinates.
+	 * @return	a Collection of candidate areas; possibly empty, never null.
+	 */
+	static synchronized Collection<ProtArea> getAreasNear(Vector3f point)
+	{
+		List<ProtArea>	region	= regions.get(key(ChunkUtils.getChunkPositionX(point.x) >> REGION_SHIFT,
+				ChunkUtils.getChunkPositionZ(point.z) >> REGION_SHIFT));
+		return region != null ? new ArrayList<>(region) : new ArrayList<ProtArea>(0);
+	}
+
+	/**
+	 * Returns the areas which may intersect a box.
+	 * @param	min	the corner of the box with the lowest coordinates, in global coordinates.
+	 * @param	max	the corner of the box with the highest coordinates, in global coordinates.
+	 * @return	a Collection of candidate areas, without duplicates; possibly empty, never null.
+	 */
+	static synchronized Collection<ProtArea> getAreasNear(Vector3f min, Vector3f max)
+	{
+		int				fromX	= ChunkUtils.getChunkPositionX(min.x) >> REGION_SHIFT;
+		int				fromZ	= ChunkUtils.getChunkPositionZ(min.z) >> REGION_SHIFT;
+		int				toX		= ChunkUtils.getChunkPositionX(max.x) >> REGION_SHIFT;
+		int				toZ		= ChunkUtils.getChunkPositionZ(max.z) >> REGION_SHIFT;
+		// distinct areas may compare as equal, if they have the same extent
+		Set<ProtArea>	areas	= Collections.newSetFromMap(new IdentityHashMap<ProtArea,Boolean>());
+		for (int x = fromX; x <= toX; x++)
+			for (int z = fromZ; z <= toZ; z++)
+			{
+				List<ProtArea>	region	= regions.get(key(x, z));
+				if (region != null)
+					areas.addAll(region);
+			}
+		return areas;
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	// the region range of an area, as { minX, minZ, maxX, maxZ }
+	private static int[] getRegionExtent(ProtArea area)
+	{
+		Vector3i	from	= area.getStartChunkPosition();
+		Vector3i	to		= area.getEndChunkPosition();
+		return new int[] { Math.min(from.x, to.x) >> REGION_SHIFT, Math.min(from.z, to.z) >> REGION_SHIFT,
+				Math.max(from.x, to.x) >> REGION_SHIFT, Math.max(from.z, to.z) >> REGION_SHIFT };
+	}
+
+	private static long key(int x, int z)
+	{
+		return ((long)x << 32) | (z & 0xFFFFFFFFL);
+	}
+}
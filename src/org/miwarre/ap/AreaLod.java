@@ -0,0 +1,192 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	AreaLod.java - Merged outlines of neighbouring areas, for distant viewing.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.risingworld.api.utils.Area;
+import net.risingworld.api.utils.Utils.ChunkUtils;
+import net.risingworld.api.utils.Utils.GeneralUtils;
+import net.risingworld.api.utils.Vector3f;
+import net.risingworld.api.worldelements.WorldArea;
+
+/**
+ * The coarse level of detail of the area visualisation: the areas of each
+ * square cell of (2^CELL_SHIFT)^2 chunk columns are merged into a Cluster,
+ * a single box bounding all of them, which can be shown to distant viewers
+ * instead of the individual areas.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>Each area belongs to the cell of its centre. The members of each cell are
+ * kept up to date as areas are added and removed; the Cluster of a cell is
+ * computed the first time it is needed and cached until a member changes.
+ * Cells with a single area have no Cluster.
+ */
+class AreaLod
+{
+	// Constants
+	private static final	int		CELL_SHIFT		= 2;		// cells are 4 x 4 chunk columns
+
+	// Fields
+	// the areas of each cell
+	private static final	Map<Long,List<ProtArea>>	cells		= new HashMap<>();
+	// the merged outline of each cell, for cells which have one and were already asked for
+	private static final	Map<Long,Cluster>			clusters	= new HashMap<>();
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Adds an area, invalidating the cluster of its cell.
+	 * @param	area	the area to add.
+	 */
+	static synchronized void add(ProtArea area)
+	{
+		Long			key		= getCell(area);
+		List<ProtArea>	cell	= cells.get(key);
+		if (cell == null)
+		{
+			cell	= new ArrayList<>(4);
+			cells.put(key, cell);
+		}
+		cell.add(area);
+		clusters.remove(key);
+	}
+
+	/**
+	 * Removes an area, invalidating the cluster of its cell.
+	 * @param	area	the area to remove; it must have the same extent it had when added.
+	 */
+	static synchronized void remove(ProtArea area)
+	{
+		Long			key		= getCell(area);
+		List<ProtArea>	cell	= cells.get(key);
+		if (cell == null)
+			return;
+		// areas are removed by identity, as equal RW areas may be distinct ProtArea's
+		for (int i = cell.size() - 1; i >= 0; i--)
+			if (cell.get(i) == area)
+				cell.remove(i);
+		if (cell.isEmpty())
+			cells.remove(key);
+		clusters.remove(key);
+	}
+
+	/**
+	 * Empties the cells and the cached clusters.
+	 */
+	static synchronized void clear()
+	{
+		cells.clear();
+		clusters.clear();
+	}
+
+	/**
+	 * Returns the cluster including an area.
+	 * @param	area	the area.
+	 * @return	the Cluster of the area cell or null if the area is alone in its cell
+	 *			(or not known).
+	 */
+	static synchronized Cluster getCluster(ProtArea area)
+	{
+		Long	key		= getCell(area);
+		Cluster	cluster	= clusters.get(key);
+		if (cluster == null)
+		{
+			List<ProtArea>	cell	= cells.get(key);
+			if (cell == null || cell.size() < 2)
+				return null;
+			cluster	= new Cluster(cell);
+			clusters.put(key, cluster);
+		}
+		return cluster;
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	// the key of the cell containing the centre of an area
+	private static Long getCell(Area area)
+	{
+		Vector3f	from	= ChunkUtils.getGlobalPosition(area.getStartChunkPosition(), area.getStartBlockPosition());
+		Vector3f	to		= ChunkUtils.getGlobalPosition(area.getEndChunkPosition(), area.getEndBlockPosition());
+		int			x		= ChunkUtils.getChunkPositionX((from.x + to.x) / 2) >> CELL_SHIFT;
+		int			z		= ChunkUtils.getChunkPositionZ((from.z + to.z) / 2) >> CELL_SHIFT;
+		return ((long)x << 32) | (z & 0xFFFFFFFFL);
+	}
+
+	//********************
+	// CLUSTER
+	//********************
+
+	/**
+	 * The merged outline of the areas of a cell: an Area bounding all of them.
+	 * <p>A Cluster never changes: when the areas of its cell change, a new
+	 * Cluster replaces it.
+	 */
+	static class Cluster extends Area
+	{
+		final	ProtArea[]	members;
+				WorldArea	worldArea;		// the visualisation of the cluster, once created
+
+		private Cluster(List<ProtArea> cell)
+		{
+			this(cell.toArray(new ProtArea[cell.size()]), getBounds(cell));
+		}
+
+		private Cluster(ProtArea[] members, float[] bounds)
+		{
+			super(new Vector3f(bounds[0], bounds[1], bounds[2]), new Vector3f(bounds[3], bounds[4], bounds[5]));
+			this.members	= members;
+		}
+
+		WorldArea getWorldArea()
+		{
+			if (worldArea == null)
+			{
+				worldArea	= new WorldArea(this);
+				worldArea.setColor(GeneralUtils.nextRandomColor(true));
+				worldArea.setAlwaysVisible(false);
+			}
+			return worldArea;
+		}
+
+		// the box bounding a list of areas, as { minX, minY, minZ, maxX, maxY, maxZ }
+		private static float[] getBounds(List<ProtArea> areas)
+		{
+			float[]	b	= { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+					-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+			for (ProtArea area : areas)
+			{
+				Vector3f	from	= ChunkUtils.getGlobalPosition(area.getStartChunkPosition(), area.getStartBlockPosition());
+				Vector3f	to		= ChunkUtils.getGlobalPosition(area.getEndChunkPosition(), area.getEndBlockPosition());
+				b[0]	= Math.min(b[0], Math.min(from.x, to.x));
+				b[1]	= Math.min(b[1], Math.min(from.y, to.y));
+				b[2]	= Math.min(b[2], Math.min(from.z, to.z));
+				b[3]	= Math.max(b[3], Math.max(from.x, to.x));
+				b[4]	= Math.max(b[4], Math.max(from.y, to.y));
+				b[5]	= Math.max(b[5], Math.max(from.z, to.z));
+			}
+			return b;
+		}
+	}
+}
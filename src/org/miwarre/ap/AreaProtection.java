@@ -23,11 +23,15 @@ package org.miwarre.ap;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.Map.Entry;
+import org.miwarre.ap.gui.GuiRouter;
 import net.risingworld.api.Plugin;
 import net.risingworld.api.objects.Player;
 import net.risingworld.api.utils.Area;
@@ -107,10 +111,12 @@ public class AreaProtection extends Plugin
 	static final	String	key_areasText		= "com.mwr.apText";		// the names of the areas the player is in
 	static final	String	key_inAreas			= "com.mwr.apInAreas";	// the areas the player is in at the moment
 	static final	String	key_isAdmin			= "com.mwr.apIsAdmin";	// whether the player is admin or manager
+	static final	String	key_areaCreation	= "com.mwr.apNewArea";	// the active new area creation session, if any
 
 	// The default values for the settings
 	static final	boolean		adminNoPrivDef		= false;
 	static final	boolean		adminOnlyDef		= true;
+	static final	int			explosionRadiusDef	= 0;
 	static final	int			heightTopDef		= 400;
 	static final	int			heightBottomDef		= -600;
 	static final	int			infoBkgColourDef	= 0xE0E0A0E0;
@@ -118,18 +124,26 @@ public class AreaProtection extends Plugin
 	static final	int			infoXPosDef			= 20;
 	static final	int			infoYPosDef			= 70;
 	static final	String		localeLanguageDef	= "en";
+	static final	int			showAreasLodDistanceDef	= 160;
+	static final	int			showAreasPerTickDef	= 16;
+	static final	int			showAreasRadiusDef	= 256;
+	static final	boolean		statsDef			= false;
 
 	// FIELDS
 	//
 	static	boolean		adminNoPriv			= adminNoPrivDef;
 	static	boolean		adminOnly			= adminOnlyDef;
 	static	String		commandPrefix		= "/ap";
+	static	int			explosionRadius		= explosionRadiusDef;
 	static	int			heightTop			= heightTopDef;
 	static	int			heightBottom		= heightBottomDef;
 	static	int			infoBkgColour		= infoBkgColourDef;
 	static	int			infoFontColour		= infoFontColourDef;
 	static	int			infoXPos			= infoXPosDef;
 	static	int			infoYPos			= infoYPosDef;
+	static	int			showAreasLodDistance= showAreasLodDistanceDef;
+	static	int			showAreasPerTick	= showAreasPerTickDef;
+	static	int			showAreasRadius		= showAreasRadiusDef;
 	static	Locale		locale;
 
 	static	AreaProtection		plugin;
@@ -142,12 +156,44 @@ public class AreaProtection extends Plugin
 	public void onEnable()
 	{
 		plugin	= this;
-		initSettings();
-		presets	= initPresets(getPath() + "/presets");
-		Msgs.init(getPath(), locale);
-		Db.init();
+		long			t0		= System.nanoTime();
+		List<String>	timings	= new ArrayList<>();
+		initSettings();				// quick, and needed for the locale
+		timings.add("settings: " + (System.nanoTime() - t0) / 1000000 + " ms");
+		Jobs.init();
+		// presets, object tables and texts are independent from each other and from the DB
+		final String	path	= getPath();
+		Jobs.Job<Map<String,Long>>	presetsJob	= Jobs.submit(Jobs.JOB_GENERIC,
+			new Callable<Map<String,Long>>()
+			{
+				@Override
+				public Map<String,Long> call()	{ return initPresets(path + "/presets"); }
+			}, null);
+		Jobs.Job<Boolean>			tablesJob	= Jobs.submit(Jobs.JOB_GENERIC,
+			new Callable<Boolean>()
+			{
+				@Override
+				public Boolean call()			{ PermTables.init(path); return true; }
+			}, null);
+		Jobs.Job<Boolean>			localeJob	= Jobs.submit(Jobs.JOB_GENERIC,
+			new Callable<Boolean>()
+			{
+				@Override
+				public Boolean call()			{ return Msgs.init(path, locale); }
+			}, null);
+		// failed loads are run again on this thread, as the plug-in cannot do without them
+		localeJob.awaitOrRetry();	// the texts are needed to publish the loaded areas
+		Db.init(timings);			// runs its own loads in parallel with the jobs above
+		presets	= presetsJob.awaitOrRetry();
+		if (presets == null)
+			presets	= new TreeMap<>();
+		tablesJob.awaitOrRetry();
+		timings.add("presets: " + presetsJob.getRunNanos() / 1000000 + " ms");
+		timings.add("object tables: " + tablesJob.getRunNanos() / 1000000 + " ms");
+		timings.add("locale: " + localeJob.getRunNanos() / 1000000 + " ms");
 		registerEventListener(ListenerPlayer.getInstance());
-		System.out.println("AREA PROTECTION "+version+" enabled successfully!");
+		System.out.println("AREA PROTECTION "+version+" enabled successfully in "
+				+ (System.nanoTime() - t0) / 1000000 + " ms (" + String.join(", ", timings) + ")");
 	}
 
 	/**
@@ -157,6 +203,10 @@ public class AreaProtection extends Plugin
 	public void onDisable()
 	{
 		unregisterEventListener(ListenerPlayer.getInstance());
+		Sessions.closeAll();
+		GuiRouter.deinit(this);
+		AreaViews.deinit();
+		Jobs.deinit();			// drain background jobs before closing the DB they may use
 		Db.deinit();
 		System.out.println("AREA PROTECTION "+version+" disabled successfully!");
 	}
@@ -180,8 +230,7 @@ public class AreaProtection extends Plugin
 	 */
 	public void mainGui(Player player)
 	{
-		GuiMainMenu	mainMenu	= new GuiMainMenu(player);
-		mainMenu.show(player);
+		GuiMainMenu.open(player);
 	}
 
 	/**
@@ -401,13 +450,18 @@ public class AreaProtection extends Plugin
 
 			adminNoPriv		= propertyToInt(settings, "adminNoPriv",	adminNoPrivDef ? 1 : 0) != 0;
 			adminOnly		= propertyToInt(settings, "adminOnly",		adminOnlyDef ? 1 : 0) != 0;
+			explosionRadius	= propertyToInt(settings, "explosionRadius", explosionRadiusDef);
 			heightTop		= propertyToInt(settings, "heightTop",		heightTopDef);
 			heightBottom	= propertyToInt(settings, "heightBottom",	heightBottomDef);
 			infoBkgColour	= propertyToInt(settings, "infoBkgColour",	infoBkgColourDef);
 			infoFontColour	= propertyToInt(settings, "infoFontColour",	infoFontColourDef);
 			infoXPos		= propertyToInt(settings, "infoXPos",		infoXPosDef);
 			infoYPos		= propertyToInt(settings, "infoYPos",		infoYPosDef);
+			showAreasLodDistance= propertyToInt(settings, "showAreasLodDistance", showAreasLodDistanceDef);
+			showAreasPerTick= propertyToInt(settings, "showAreasPerTick", showAreasPerTickDef);
+			showAreasRadius	= propertyToInt(settings, "showAreasRadius", showAreasRadiusDef);
 			strLocale		= settings.getProperty("locale", localeLanguageDef);
+			Stats.setEnabled(propertyToInt(settings, "stats", statsDef ? 1 : 0) != 0);
 		}
 		catch (IOException e)
 		{
@@ -504,6 +558,30 @@ PERM_OTHERINTERACT,PERM_OTHERINTERACT,			PERM_EXPLOSION,							PERM_ADDPLAYER,
 		return map;
 	}
 
+	/**
+	 * Converts a list of permission names, as used in the preset/group definition files,
+	 * into the corresponding permission bit flags.
+	 * @param	names	one or more permission names, separated by commas.
+	 * @return	the OR of the flags of all the recognised names; 0 if none is recognised.
+	 */
+	static long permNamesToFlags(String names)
+	{
+		long	perms	= 0;
+		if (names == null)
+			return perms;
+		for (String name : names.split(","))
+		{
+			name	= name.trim();
+			for (int i = 0; i < permNames.length; i++)
+				if (permNames[i].equals(name))
+				{
+					perms	|= permValues[i];
+					break;
+				}
+		}
+		return perms;
+	}
+
 	/**
 		Returns txt as an integer number if it can be interpreted as one
 		or defaultVal if it cannot.
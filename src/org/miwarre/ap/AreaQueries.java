@@ -0,0 +1,180 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	AreaQueries.java - Read-only queries on the in-memory area data, for the GUI.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import net.risingworld.api.objects.Player;
+
+/**
+ * The read-only queries used by the area editing dialogue boxes.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>All the answers come from the data kept in memory: the area registry and
+ * the ACL's of each ProtArea, the per-player maps in the player attributes,
+ * the permission groups and the player directory. None of the queries accesses
+ * the DB, so opening or refreshing a dialogue box never waits for it, except
+ * for the player names needed while the player directory is still loading,
+ * which are then read with a single query. Changes still go through the Db
+ * methods, which keep the same in-memory data current.
+ * <p>Returned collections must not be modified.
+ */
+class AreaQueries
+{
+	// the order of group lists: by name, case-insensitively
+	private static final	Comparator<Entry<Integer,String>>	GROUP_NAME_ORDER	=
+			new Comparator<Entry<Integer,String>>()
+			{
+				@Override
+				public int compare(Entry<Integer,String> e1, Entry<Integer,String> e2)
+				{
+					return String.CASE_INSENSITIVE_ORDER.compare(e1.getValue(), e2.getValue());
+				}
+			};
+
+	// Fields
+	// the groups sorted by name and the group map they were sorted from
+	private static			List<Entry<Integer,String>>		groupsByName		= null;
+	private static			Map<Integer,String>				groupsByNameSource	= null;
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Returns the players or the groups with specific permissions for an area.
+	 * @param	area	the area.
+	 * @param	type	Db.LIST_TYPE_PLAYER, Db.LIST_TYPE_GROUP or Db.LIST_TYPE_MANAGERS.
+	 * @return	an unmodifiable Map from player or group id to permissions; never null.
+	 */
+	static Map<Integer,Long> getAcl(ProtArea area, int type)
+	{
+		Map<Integer,Long>	acl	= type == Db.LIST_TYPE_GROUP ? area.groups : area.players;
+		return acl != null ? Collections.unmodifiableMap(acl) : Collections.<Integer,Long>emptyMap();
+	}
+
+	/**
+	 * Returns the permissions of a player or group for an area, as they would be
+	 * initially set for editing: its specific permissions, if any, or the generic
+	 * permissions of the area.
+	 * @param	area	the area.
+	 * @param	type	Db.LIST_TYPE_PLAYER or Db.LIST_TYPE_GROUP.
+	 * @param	id		the DB id of the player or the id of the group.
+	 * @return	the permissions.
+	 */
+	static long getPermissionsFor(ProtArea area, int type, int id)
+	{
+		Long	perms	= getAcl(area, type).get(id);
+		return perms != null ? perms : area.permissions;
+	}
+
+	/**
+	 * Returns whether a player or a group is already in the ACL of an area.
+	 * @param	area	the area.
+	 * @param	type	Db.LIST_TYPE_PLAYER, Db.LIST_TYPE_GROUP or Db.LIST_TYPE_MANAGERS.
+	 * @param	id		the DB id of the player or the id of the group.
+	 * @return	true if the player or group has specific permissions for the area.
+	 */
+	static boolean isListed(ProtArea area, int type, int id)
+	{
+		return getAcl(area, type).containsKey(id);
+	}
+
+	/**
+	 * Returns the permissions a player has for an area, i.e. which permissions
+	 * the player can grant or edit for it.
+	 * @param	player	the player.
+	 * @param	area	the area.
+	 * @return	the permissions.
+	 */
+	static long getEditingMask(Player player, ProtArea area)
+	{
+		return Db.getPlayerPermissionsForArea(player, area.id);
+	}
+
+	/**
+	 * Returns the names of several players or groups, e.g. of all the entries
+	 * of an ACL, with at most one DB query.
+	 * @param	ids		the DB id's of the players or the id's of the groups.
+	 * @param	type	Db.LIST_TYPE_PLAYER, Db.LIST_TYPE_GROUP or Db.LIST_TYPE_MANAGERS.
+	 * @return	a Map from id to name; ids not known are not in it. Never null.
+	 */
+	static Map<Integer,String> getNames(Collection<Integer> ids, int type)
+	{
+		if (type == Db.LIST_TYPE_GROUP)
+		{
+			Map<Integer,String>	names	= Db.groupNames;
+			return names != null ? names : Collections.<Integer,String>emptyMap();
+		}
+		return PlayerDirectory.getNames(ids);
+	}
+
+	/**
+	 * Returns the permission groups, sorted by name. The list is only sorted
+	 * again when the groups are re-loaded.
+	 * @return	an unmodifiable List of group id / group name pairs; never null.
+	 */
+	static synchronized List<Entry<Integer,String>> getGroupsByName()
+	{
+		Map<Integer,String>	names	= Db.groupNames;
+		if (names == null)
+			return Collections.emptyList();
+		if (groupsByNameSource != names)
+		{
+			List<Entry<Integer,String>>	list	= new ArrayList<>(names.entrySet());
+			Collections.sort(list, GROUP_NAME_ORDER);
+			groupsByName		= Collections.unmodifiableList(list);
+			groupsByNameSource	= names;
+		}
+		return groupsByName;
+	}
+
+	/**
+	 * Returns the pseudo-area whose ACL lists the area managers.
+	 * @return	the area managers pseudo-area.
+	 */
+	static ProtArea getManagersArea()
+	{
+		return Db.getManagersArea();
+	}
+
+	/**
+	 * Returns the areas a player can edit, sorted by name.
+	 * @param	player	the player.
+	 * @return	an array of areas, sorted by name; the caller must not modify it.
+	 */
+	static ProtArea[] getOwnedAreasByName(Player player)
+	{
+		return Db.getOwnedAreasByName(player);
+	}
+
+	/**
+	 * Returns an area of the registry.
+	 * @param	id	the area id.
+	 * @return	the area or null if no area has this id.
+	 */
+	static ProtArea getArea(int id)
+	{
+		return Db.getAreaFromId(id);
+	}
+}
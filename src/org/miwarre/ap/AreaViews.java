@@ -0,0 +1,352 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	AreaViews.java - The streaming of area visualisations to players.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import net.risingworld.api.Timer;
+import net.risingworld.api.objects.Player;
+import net.risingworld.api.utils.Area;
+import net.risingworld.api.utils.Utils.ChunkUtils;
+import net.risingworld.api.utils.Utils.GeneralUtils;
+import net.risingworld.api.utils.Vector3f;
+import net.risingworld.api.worldelements.WorldArea;
+
+/**
+ * Streams the visualisations of the areas (their WorldArea's) to the players
+ * who turned area display on.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>Only the areas within AreaProtection.showAreasRadius blocks (horizontally)
+ * from a player are shown to it; the set is updated when the player moves from
+ * a chunk to another and when areas are added, changed or deleted. With a
+ * radius of 0, all the areas are shown.
+ * <p>Changes are not sent to the client right away: for each player, the areas
+ * whose visualisation should be added or removed are queued and a timer sends
+ * at most AreaProtection.showAreasPerTick of them at each tick. As the queue is
+ * checked against the wanted state when sent, an area entering and leaving the
+ * range before its turn costs nothing.
+ * <p>Beyond AreaProtection.showAreasLodDistance blocks, the areas of each AreaLod
+ * cell are shown as a single merged outline, which is expanded into the
+ * individual areas as the player gets closer.
+ */
+class AreaViews
+{
+	// Constants
+	private static final	float	TICK_INTERVAL	= 0.2f;		// seconds
+
+	// Fields
+	private static final	Map<Player,View>	views	= new HashMap<>();
+	private static			Timer				timer	= null;
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Turns area display on for a player.
+	 * @param	player	the player.
+	 */
+	static synchronized void show(Player player)
+	{
+		player.setAttribute(AreaProtection.key_areasShown, true);
+		View	view	= views.get(player);
+		if (view == null)
+		{
+			view	= new View(player);
+			views.put(player, view);
+		}
+		view.viewing	= true;
+		view.setWanted(getOutlinesInRange(player));
+		startTimer();
+	}
+
+	/**
+	 * Turns area display off for a player; the visualisations already sent
+	 * are removed, at the same pace they are added.
+	 * @param	player	the player.
+	 */
+	static synchronized void hide(Player player)
+	{
+		player.setAttribute(AreaProtection.key_areasShown, false);
+		View	view	= views.get(player);
+		if (view == null)
+			return;
+		view.viewing	= false;
+		view.setWanted(Collections.<Area>emptyList());
+		startTimer();
+	}
+
+	/**
+	 * Forgets a disconnecting player, without sending anything to it.
+	 * @param	player	the player.
+	 */
+	static synchronized void removePlayer(Player player)
+	{
+		views.remove(player);
+	}
+
+	/**
+	 * Updates the areas shown to a player after it moved to another chunk.
+	 * @param	player	the player.
+	 */
+	static synchronized void onPlayerMoved(Player player)
+	{
+		View	view	= views.get(player);
+		// with no radius and no merged outlines, what is shown does not depend on the position
+		if (view == null || !view.viewing
+				|| (AreaProtection.showAreasRadius <= 0 && AreaProtection.showAreasLodDistance <= 0))
+			return;
+		view.setWanted(getOutlinesInRange(player));
+		startTimer();
+	}
+
+	/**
+	 * Shows a new area to the players who have it in range.
+	 * @param	area	the new area.
+	 */
+	static synchronized void onAreaAdded(ProtArea area)
+	{
+		refreshAll();
+	}
+
+	/**
+	 * Removes the visualisation of a deleted area from all the players.
+	 * @param	area	the deleted area.
+	 */
+	static synchronized void onAreaRemoved(ProtArea area)
+	{
+		refreshAll();
+	}
+
+	/**
+	 * Moves the visualisation of an area to the new object replacing it.
+	 * If the extent did not change, the visualisation already sent is kept
+	 * as it is; otherwise, it is replaced by one for the new extent.
+	 * @param	oldArea	the area being replaced.
+	 * @param	newArea	the new area.
+	 * @param	resized	whether the extent of the area changed.
+	 */
+	static synchronized void onAreaReplaced(ProtArea oldArea, ProtArea newArea, boolean resized)
+	{
+		if (!resized && newArea.worldArea == null)
+			newArea.worldArea	= oldArea.worldArea;
+		if (!resized)
+			for (View view : views.values())
+				if (view.onClient.remove(oldArea))
+				{
+					// the same WorldArea is on the client: just re-label it
+					view.onClient.add(newArea);
+					if (view.wanted.remove(oldArea))
+						view.wanted.add(newArea);
+				}
+		refreshAll();
+	}
+
+	/**
+	 * Returns the number of players with area display on.
+	 * @return	the number of viewers.
+	 */
+	static synchronized int size()
+	{
+		int	count	= 0;
+		for (View view : views.values())
+			if (view.viewing)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Stops the streaming and forgets all the players; to be called when the plug-in is disabled.
+	 */
+	static synchronized void deinit()
+	{
+		if (timer != null)
+			timer.kill();
+		timer	= null;
+		views.clear();
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	// sends the next queued changes to each player, at most showAreasPerTick each
+	private static synchronized void tick()
+	{
+		int		perTick	= Math.max(1, AreaProtection.showAreasPerTick);
+		boolean	busy	= false;
+		for (Iterator<View> iter = views.values().iterator(); iter.hasNext(); )
+		{
+			View	view	= iter.next();
+			view.send(perTick);
+			if (!view.queue.isEmpty())
+				busy	= true;
+			else if (!view.viewing && view.onClient.isEmpty())
+				iter.remove();				// nothing left to show or remove
+		}
+		if (!busy && timer != null)
+		{
+			timer.kill();
+			timer	= null;
+		}
+	}
+
+	// re-computes the outlines wanted by every player, after a change of the areas
+	private static void refreshAll()
+	{
+		for (View view : views.values())
+			view.setWanted(view.viewing ? getOutlinesInRange(view.player) : Collections.<Area>emptyList());
+		startTimer();
+	}
+
+	private static void startTimer()
+	{
+		if (timer != null)
+			return;
+		timer	= new Timer(TICK_INTERVAL, 0, -1, new Runnable()
+			{
+				@Override
+				public void run()	{ tick(); }
+			});
+		timer.start();
+	}
+
+	// the outlines to show to a player in its current position: the areas in range,
+	// with distant clusters of areas replaced by their merged outline
+	private static Collection<Area> getOutlinesInRange(Player player)
+	{
+		int						radius	= AreaProtection.showAreasRadius;
+		int						lodDist	= AreaProtection.showAreasLodDistance;
+		Vector3f				pos		= player.getPosition();
+		Collection<ProtArea>	areas	= radius <= 0 ? Db.getAreaSnapshot().values() :
+				AreaIndex.getAreasNear(new Vector3f(pos.x - radius, pos.y, pos.z - radius),
+						new Vector3f(pos.x + radius, pos.y, pos.z + radius));
+		Set<Area>				outlines= newAreaSet();
+		for (ProtArea area : areas)
+		{
+			if (radius > 0 && !isInRange(pos, radius, area))
+				continue;
+			AreaLod.Cluster	cluster	= lodDist > 0 ? AreaLod.getCluster(area) : null;
+			if (cluster != null && !isInRange(pos, lodDist, cluster))
+				outlines.add(cluster);
+			else
+				outlines.add(area);
+		}
+		return outlines;
+	}
+
+	// whether the horizontal distance between a point and the extent of an area is within radius
+	private static boolean isInRange(Vector3f pos, int radius, Area area)
+	{
+		Vector3f	from	= ChunkUtils.getGlobalPosition(area.getStartChunkPosition(), area.getStartBlockPosition());
+		Vector3f	to		= ChunkUtils.getGlobalPosition(area.getEndChunkPosition(), area.getEndBlockPosition());
+		float		dx		= Math.max(0, Math.max(Math.min(from.x, to.x) - pos.x, pos.x - Math.max(from.x, to.x)));
+		float		dz		= Math.max(0, Math.max(Math.min(from.z, to.z) - pos.z, pos.z - Math.max(from.z, to.z)));
+		return dx * dx + dz * dz <= (float)radius * radius;
+	}
+
+	//********************
+	// VIEW
+	//********************
+
+	/**
+	 * The visualisation state of a player: the areas it should see, those
+	 * actually sent to it and the queue of the areas which may differ.
+	 */
+	private static class View
+	{
+		final	Player			player;
+		final	Set<Area>		wanted		= newAreaSet();
+		final	Set<Area>		onClient	= newAreaSet();
+		final	ArrayDeque<Area>	queue	= new ArrayDeque<>();
+				boolean			viewing;
+
+		View(Player player)
+		{
+			this.player	= player;
+		}
+
+		// replaces the wanted outlines, queuing only the differences
+		void setWanted(Collection<Area> areas)
+		{
+			Set<Area>	newWanted	= newAreaSet();
+			newWanted.addAll(areas);
+			for (Area area : wanted)
+				if (!newWanted.contains(area))
+					queue.add(area);
+			for (Area area : newWanted)
+				if (!onClient.contains(area))
+					queue.add(area);
+			wanted.clear();
+			wanted.addAll(newWanted);
+		}
+
+		// sends at most max changes to the client
+		void send(int max)
+		{
+			int	sent	= 0;
+			while (sent < max && !queue.isEmpty())
+			{
+				Area		area	= queue.poll();
+				boolean		isWanted= wanted.contains(area);
+				if (isWanted == onClient.contains(area))
+					continue;				// already as it should be: costs nothing
+				if (isWanted)
+				{
+					player.addWorldElement(getWorldArea(area));
+					onClient.add(area);
+				}
+				else
+				{
+					player.removeWorldElement(getWorldArea(area));
+					onClient.remove(area);
+				}
+				sent++;
+			}
+		}
+
+	}
+
+	// the visualisation of an area or of a cluster, created the first time it is needed
+	private static WorldArea getWorldArea(Area outline)
+	{
+		if (outline instanceof AreaLod.Cluster)
+			return ((AreaLod.Cluster)outline).getWorldArea();
+		ProtArea	area	= (ProtArea)outline;
+		if (area.worldArea == null)
+		{
+			area.worldArea = new WorldArea(area);
+			area.worldArea.setColor(GeneralUtils.nextRandomColor(true));
+			area.worldArea.setAlwaysVisible(false);
+		}
+		return area.worldArea;
+	}
+
+	// distinct areas may compare as equal, if they have the same extent
+	private static Set<Area> newAreaSet()
+	{
+		return Collections.newSetFromMap(new IdentityHashMap<Area,Boolean>());
+	}
+}
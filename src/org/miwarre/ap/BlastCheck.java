@@ -0,0 +1,143 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	BlastCheck.java - Checks explosion permissions over the whole extent of a blast.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.risingworld.api.objects.Player;
+import net.risingworld.api.utils.Vector3f;
+
+/**
+ * Checks whether a player may cause an explosion, considering every area
+ * touched by the blast and not only the area(s) containing its centre.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>The blast is approximated by the box enclosing its sphere and the player
+ * needs PERM_EXPLOSION in all the areas intersecting the box.
+ * <p>As explosions often come in chain reactions, results are kept for the
+ * duration of a server tick (or until areas or permissions change):
+ * <ul>
+ * <li>a blast entirely inside a box already found to allow explosions is allowed;</li>
+ * <li>a blast entirely enclosing a box already found to deny explosions is denied.</li>
+ * </ul>
+ * To make the first case more likely, a new check is first done on a box twice
+ * as large as the blast; only if this fails, the actual blast box is checked.
+ */
+class BlastCheck
+{
+	// Constants
+	private static final	long	TICK_NANOS		= 50000000L;	// 50 ms
+	private static final	int		MAX_CACHED		= 32;			// the max. number of results kept in a tick
+
+	// Fields
+	private static final	List<Blast>	cache			= new ArrayList<>(MAX_CACHED);
+	private static			long		tickStart		= 0;
+	private static			int			tickChangeCount	= 0;
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Returns whether a player may cause an explosion.
+	 * @param	player	the player responsible for the explosion.
+	 * @param	centre	the centre of the explosion.
+	 * @param	radius	the radius of the blast; if 0, only the centre is checked.
+	 * @return	true if the explosion is allowed, false if it is not.
+	 */
+	static synchronized boolean isAllowed(Player player, Vector3f centre, float radius)
+	{
+		if (radius <= 0)
+			return (Db.getPlayerPermissionsForPoint(player, centre) & AreaProtection.PERM_EXPLOSION) != 0;
+
+		// drop the results of previous ticks or computed on out-dated area data
+		long	now		= System.nanoTime();
+		int		changes	= Db.getChangeCount();
+		if (now - tickStart > TICK_NANOS || changes != tickChangeCount)
+		{
+			cache.clear();
+			tickStart		= now;
+			tickChangeCount	= changes;
+		}
+
+		int		playerId	= player.getDbID();
+		float	minX	= centre.x - radius,	minY	= centre.y - radius,	minZ	= centre.z - radius;
+		float	maxX	= centre.x + radius,	maxY	= centre.y + radius,	maxZ	= centre.z + radius;
+		for (Blast blast : cache)
+		{
+			if (blast.playerId != playerId)
+				continue;
+			if (blast.allowed && blast.contains(minX, minY, minZ, maxX, maxY, maxZ))
+				return true;
+			if (!blast.allowed && blast.isContainedIn(minX, minY, minZ, maxX, maxY, maxZ))
+				return false;
+		}
+
+		// no usable result: try first a larger box, to cover the next blasts of a chain
+		float	r2		= radius * 2;
+		Blast	blast	= new Blast(playerId, centre.x - r2, centre.y - r2, centre.z - r2,
+				centre.x + r2, centre.y + r2, centre.z + r2);
+		if (!blast.check(player))
+			// the larger box may touch areas the blast does not: check the actual blast box
+			(blast	= new Blast(playerId, minX, minY, minZ, maxX, maxY, maxZ)).check(player);
+		if (cache.size() >= MAX_CACHED)
+			cache.remove(0);
+		cache.add(blast);
+		return blast.allowed;
+	}
+
+	//********************
+	// PRIVATE HELPER CLASSES
+	//********************
+
+	/**
+	 * The result of a permission check for a box.
+	 */
+	private static class Blast
+	{
+		final	int		playerId;
+		final	float	minX, minY, minZ, maxX, maxY, maxZ;
+				boolean	allowed;
+
+		Blast(int playerId, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+		{
+			this.playerId	= playerId;
+			this.minX		= minX;		this.minY	= minY;		this.minZ	= minZ;
+			this.maxX		= maxX;		this.maxY	= maxY;		this.maxZ	= maxZ;
+		}
+
+		boolean check(Player player)
+		{
+			allowed	= (Db.getPlayerPermissionsForBox(player, new Vector3f(minX, minY, minZ),
+					new Vector3f(maxX, maxY, maxZ)) & AreaProtection.PERM_EXPLOSION) != 0;
+			return allowed;
+		}
+
+		// whether this box contains the given box
+		boolean contains(float x0, float y0, float z0, float x1, float y1, float z1)
+		{
+			return x0 >= minX && y0 >= minY && z0 >= minZ && x1 <= maxX && y1 <= maxY && z1 <= maxZ;
+		}
+
+		// whether this box is contained in the given box
+		boolean isContainedIn(float x0, float y0, float z0, float x1, float y1, float z1)
+		{
+			return minX >= x0 && minY >= y0 && minZ >= z0 && maxX <= x1 && maxY <= y1 && maxZ <= z1;
+		}
+	}
+}
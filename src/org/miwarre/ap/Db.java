@@ -31,23 +31,25 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
 import net.risingworld.api.Server;
 import net.risingworld.api.database.Database;
-import net.risingworld.api.database.WorldDatabase;
 import net.risingworld.api.gui.GuiLabel;
 import net.risingworld.api.objects.Player;
 import net.risingworld.api.utils.Area;
 import net.risingworld.api.utils.BoundingInformation;
 import net.risingworld.api.utils.Utils.ChunkUtils;
-import net.risingworld.api.utils.Utils.GeneralUtils;
 import net.risingworld.api.utils.Vector3f;
 import net.risingworld.api.utils.Vector3i;
-import net.risingworld.api.worldelements.WorldArea;
 
 /**
  * A data base class managing area and permission data.
@@ -65,12 +67,35 @@ public class Db
 	static final	int	LIST_TYPE_PLAYER	= 1;
 	static final	int	LIST_TYPE_GROUP		= 2;
 	static final	int	LIST_TYPE_MANAGERS	= 3;
+	// the order of area lists: by name, case-insensitively, then by id
+	private static final	Comparator<ProtArea>	AREA_NAME_ORDER	= new Comparator<ProtArea>()
+		{
+			@Override
+			public int compare(ProtArea a1, ProtArea a2)
+			{
+				int	res	= String.CASE_INSENSITIVE_ORDER.compare(a1.getName(), a2.getName());
+				return res != 0 ? res : Integer.compare(a1.id, a2.id);
+			}
+		};
 	// Globals
-	private	static	Map<Integer,ProtArea>	areas		= null;
+	// the area registry: an immutable snapshot, replaced as a whole at each change,
+	// so that readers on any thread never need locking
+	private	static volatile	Map<Integer,ProtArea>	areas	= Collections.emptyMap();
 			static	Map<Integer,String>		groupNames	= null;
 	private	static	Map<String,Integer>		groupIds	= null;
-	private static	Map<Integer,String>		playerNames	= null;
 	private	static	Database				db			= null;
+	// incremented at each change of areas or area permissions, to invalidate derived caches
+	private	static volatile	int				changeCount	= 0;
+	// serialises the changes to the area registry
+	private	static final	Object			areasLock	= new Object();
+	// the working copy of the area registry while a batch of changes is open, null otherwise
+	private	static	Map<Integer,ProtArea>	areasBatch	= null;
+	private	static	int						batchDepth	= 0;
+	// all the areas sorted by name and the registry snapshot they were sorted from
+	private	static	ProtArea[]				areasByName	= null;
+	private	static	Map<Integer,ProtArea>	areasByNameSource	= null;
+	// the pseudo-area whose player list are the area managers, loaded with the areas
+	private	static volatile	ProtArea		managersArea	= null;
 
 	//********************
 	// PROTECTED METHODS
@@ -79,9 +104,16 @@ public class Db
 	/**
 		Initialises and opens the DB for this plug-in. Can be run at each
 		script startup without destroying existing data.
+		<p>Areas with their permissions, permission groups and player names are
+		loaded in parallel by background jobs; the results are then published
+		and the areas registered with the server on the calling (main) thread.
+
+		@param	timings	a list to which the durations of the init phases are added,
+						as "phase: N ms" texts.
 	 */
-	static void init()
+	static void init(List<String> timings)
 	{
+		long	t0	= System.nanoTime();
 		if (db == null)
 			db = AreaProtection.plugin.getSQLiteConnection(AreaProtection.plugin.getPath()
 					+ "/ap-" + AreaProtection.plugin.getWorld().getName()+".db");
@@ -142,10 +174,39 @@ public class Db
 		// as areas are loaded from DB in name order, this makes area lists mostly in name order
 		// (exceptions are newly created areas which are at the end and will be sordet at next
 		// server and plug-in restart).
-		areas	= new LinkedHashMap<>();
-		initAreas();
-		initGroups();
+		areas	= Collections.unmodifiableMap(new LinkedHashMap<Integer,ProtArea>());
+		timings.add(phaseTime("db open", System.nanoTime() - t0));
+
+		// the DB connection cannot be shared between threads: only one job at a time uses it,
+		// while the scan of the group directory, which needs no DB, runs in parallel
+		Jobs.Job<Map<Integer,ProtArea>>	areasJob	= Jobs.submit(Jobs.JOB_DB,
+			new Callable<Map<Integer,ProtArea>>()
+			{
+				@Override
+				public Map<Integer,ProtArea> call()	{ return loadAreas(); }
+			}, null);
+		Jobs.Job<String[]>	groupsJob	= Jobs.submit(Jobs.JOB_GROUPS,
+			new Callable<String[]>()
+			{
+				@Override
+				public String[] call()	{ return scanGroups(); }
+			}, null);
+		// the player directory is only needed by the GUI: it is not waited for
+		PlayerDirectory.init();
+
+		// publish the results on this thread; a failed load is run again rather than
+		// starting with an empty registry, i.e. with no protection at all
+		Map<Integer,ProtArea>	loaded	= areasJob.awaitOrRetry();
+		timings.add(phaseTime("areas (" + (loaded != null ? loaded.size() : 0) + ")", areasJob.getRunNanos()));
+		String[]	rwGroups	= groupsJob.awaitOrRetry();
+		t0	= System.nanoTime();
+		// the DB is free again once the areas are loaded
+		setGroups(loadGroups(rwGroups));
+		timings.add(phaseTime("groups", groupsJob.getRunNanos() + System.nanoTime() - t0));
+		t0	= System.nanoTime();
+		publishLoadedAreas(loaded);
 		AP3LUAImport();
+		timings.add(phaseTime("publish", System.nanoTime() - t0));
 	}
 	static void deinit()
 	{
@@ -155,7 +216,16 @@ public class Db
 			ProtArea	area	= entry.getValue();
 			server.removeArea(area);
 		}
-		areas.clear();
+		areas	= Collections.emptyMap();
+		AreaIndex.clear();
+		AreaLod.clear();
+		managersArea	= null;
+		synchronized(Db.class)
+		{
+			areasByName			= null;
+			areasByNameSource	= null;
+		}
+		PlayerDirectory.deinit();
 		db.close();
 		db = null;
 	}
@@ -171,10 +241,10 @@ public class Db
 		// admin/manager attribute
 		player.setAttribute(AreaProtection.key_isAdmin, player.isAdmin());
 		// the map with player-specific area permissions
-		HashMap<Integer,Long>	permAreas	= new HashMap<>();
+		HashMap<Integer,Long>	permAreas	= Sessions.obtainMap();
 		player.setAttribute(AreaProtection.key_areas, permAreas);
 		// the map with permissions for the areas the player currently is in
-		HashMap<Integer,Long>	inAreas	= new HashMap<>();
+		HashMap<Integer,Long>	inAreas	= Sessions.obtainMap();
 		player.setAttribute(AreaProtection.key_inAreas, inAreas);
 		// the cumulated permissions of all areas the player is currently in
 		player.setAttribute(AreaProtection.key_areaPerms, AreaProtection.PERM_ALL);
@@ -204,6 +274,16 @@ public class Db
 		@return	on entering an area in which the player cannot enter, ERROR_CANNOT_ENTER; otherwise SUCCESS
 	*/
 	static int onPlayerArea(Player player, Area rwArea, boolean enter)
+	{
+		long	t0		= Stats.start();
+		int		retVal	= playerArea(player, rwArea, enter);
+		Stats.end(Stats.EV_DB_PLAYERAREA, t0,
+				retVal == AreaProtection.ERR_CANNOT_ENTER || retVal == AreaProtection.ERR_CANNOT_LEAVE);
+		return retVal;
+	}
+
+	// the actual implementation of onPlayerArea(), separated from it for instrumentation
+	private static int playerArea(Player player, Area rwArea, boolean enter)
 	{
 		ProtArea	area;
 		// retrieve the permissionArea matching the given RW rwArea
@@ -216,30 +296,10 @@ public class Db
 		// retrieve the list of areas the player has specific permission for
 //		@SuppressWarnings("unchecked")
 		HashMap<Integer,Long>	areaPerms	= (HashMap<Integer, Long>)player.getAttribute(AreaProtection.key_areas);
-		long					cumulPerm	= AreaProtection.PERM_ALL;
 		int						retVal		= AreaProtection.ERR_SUCCESS;
-		// if not admin OR no admin special privilege,
 		// retrieve the permissions for this player and this area.
-		Long					areaPerm	= AreaProtection.PERM_ALL;
-		if (!(Boolean)player.getAttribute(AreaProtection.key_isAdmin) || AreaProtection.adminNoPriv)
-		{
-			if (areaPerms != null)
-				areaPerm	= areaPerms.get(area.id);	// the player-specific permission for this area
-			if (areaPerm == null)						// if no player-specific permissions...
-			{
-				Long	groupPerm;						// ...get the group the player belongs to
-				String	groupName	= player.getPermissionGroup();
-				// convert group name into group ID
-				// and look for group-specific permission for this area
-				Integer	groupId;
-				if (groupName != null && !groupName.isEmpty() &&
-						(groupId=groupIds.get(groupName)) != null &&
-						(groupPerm = area.groups.get(groupId)) != null)
-					areaPerm	= groupPerm;			// if found, use them as player perms. for area
-				else									// if neither group-specific permission (or no group)
-					areaPerm	= area.permissions;		// ...use default area permissions
-			}
-		}
+		long					areaPerm	= resolvePermission(area, isPrivileged(player), areaPerms,
+				getGroupId(player.getPermissionGroup()));
 
 		// upon entering a new area
 		if (enter)
@@ -263,15 +323,31 @@ public class Db
 		}
 
 		// in any case, re-compute current cumulative permissions and area info text for the player.
-		// The cumulative permissions are the logical AND of the permissions
-		// (either default or group-specific or player-specific)
-		// of all the areas the player is currently in.
+		updatePlayerSummary(player, inAreas);
+		return retVal;
+	}
+
+	/**
+		Re-computes the cumulative permissions and the area info text of a player
+		from the areas the player is currently in.
+		<p>The cumulative permissions are the logical AND of the permissions
+		(either default or group-specific or player-specific)
+		of all the areas the player is currently in.
+
+		@param	player	the player
+		@param	inAreas	the areas the player is in, with the player permissions for each; may be null
+	*/
+	static void updatePlayerSummary(Player player, Map<Integer,Long> inAreas)
+	{
+		long	cumulPerm	= AreaProtection.PERM_ALL;
 		if (inAreas != null)
 		{
+			Map<Integer,ProtArea>	snapshot	= areas;	// a consistent view of the registry
 			String	text	= "";
 			for (Map.Entry<Integer,Long> entry : inAreas.entrySet())
 			{
-				String	name	= areas.get(entry.getKey()).getName();	// the area name
+				ProtArea	inArea	= snapshot.get(entry.getKey());
+				String		name	= inArea != null ? inArea.getName() : null;	// the area name
 				if (name != null)
 				{
 					// chain names of areas the player is in
@@ -280,15 +356,92 @@ public class Db
 				}
 				cumulPerm	&= entry.getValue();		// accumulate permissions
 			}
-			((GuiLabel)player.getAttribute(AreaProtection.key_areasText)).setText(text);
+			GuiLabel	label	= (GuiLabel)player.getAttribute(AreaProtection.key_areasText);
+			if (label != null)
+				label.setText(text);
 		}
 		// if admin (and admin privileges are not limited), any permission is enabled
-		if ((Boolean)player.getAttribute(AreaProtection.key_isAdmin) && !AreaProtection.adminNoPriv)
+		if (isPrivileged(player))
 			cumulPerm	= AreaProtection.PERM_ALL;
 		player.setAttribute(AreaProtection.key_areaPerms, cumulPerm);
-		return retVal;
 	}
 
+	/**
+		Returns the permissions of a player in an area, from player-specific,
+		group-specific or default area permissions, in this order of precedence.
+		<p>Reads the area data as they are: to be called on the server thread, which
+		is the one changing them.
+
+		@param	area		the area
+		@param	privileged	whether the player is an admin (or manager) with admin privileges enabled
+		@param	playerAcl	the player-specific permissions of the player, by area id; may be null
+		@param	groupId		the id of the permission group of the player; may be null
+		@return	the permissions of the player in the area
+	*/
+	static long resolvePermission(ProtArea area, boolean privileged, Map<Integer,Long> playerAcl,
+			Integer groupId)
+	{
+		return resolvePermission(area.id, area.permissions, area.groups, privileged, playerAcl, groupId);
+	}
+
+	/**
+		Returns the permissions of a player in an area, as resolvePermission() above,
+		from area data captured separately.
+		<p>A pure function of its arguments: it can be run on any thread, given
+		copies of the area and player data taken on the server thread.
+
+		@param	areaId		the id of the area
+		@param	areaPerms	the default permissions of the area
+		@param	areaGroups	the group-specific permissions of the area, by group id
+		@param	privileged	whether the player is an admin (or manager) with admin privileges enabled
+		@param	playerAcl	the player-specific permissions of the player, by area id; may be null
+		@param	groupId		the id of the permission group of the player; may be null
+		@return	the permissions of the player in the area
+	*/
+	static long resolvePermission(int areaId, long areaPerms, Map<Integer,Long> areaGroups,
+			boolean privileged, Map<Integer,Long> playerAcl, Integer groupId)
+	{
+		// if admin AND admin privileges are not limited, any permission is enabled
+		if (privileged)
+			return AreaProtection.PERM_ALL;
+		Long	areaPerm	= null;
+		if (playerAcl != null)
+			areaPerm	= playerAcl.get(areaId);		// the player-specific permission for this area
+		if (areaPerm == null && groupId != null)		// if none, look for group-specific permission
+			areaPerm	= areaGroups.get(groupId);
+		if (areaPerm == null)							// if neither, use default area permissions
+			areaPerm	= areaPerms;
+		return areaPerm;
+	}
+
+	/**
+		Returns whether a player currently has admin privileges in areas, i.e. is an
+		admin (or area manager) and admin privileges are not disabled.
+		A player who is no longer connected has no privileges.
+	*/
+	static boolean isPrivileged(Player player)
+	{
+		Boolean	isAdmin	= (Boolean)player.getAttribute(AreaProtection.key_isAdmin);
+		return isAdmin != null && isAdmin && !AreaProtection.adminNoPriv;
+	}
+
+	/**
+		Returns the id of a permission group from its name or null if the group is unknown.
+	*/
+	static Integer getGroupId(String groupName)
+	{
+		Map<String,Integer>	ids	= groupIds;
+		if (groupName == null || groupName.isEmpty() || ids == null)
+			return null;
+		return ids.get(groupName);
+	}
+
+	/**
+		Returns the current area registry snapshot; it is immutable and remains
+		consistent whatever changes are later made to areas.
+	*/
+	static Map<Integer,ProtArea> getAreaSnapshot()	{ return areas; }
+
 	//********************
 	//	AREA MANAGEMENT
 	//********************
@@ -321,7 +474,7 @@ public class Db
 				{
 					int	newId	= idSet.getInt(1);
 					area.id		= newId;
-					areas.put(newId, area);
+					putArea(area);
 					AreaProtection.plugin.getServer().addArea(area);
 				}
 			}
@@ -330,14 +483,14 @@ public class Db
 			e.printStackTrace();
 			return AreaProtection.ERR_DB;
 		}
-		// show the new area to any player with area display turned on
-		for(Player player : AreaProtection.plugin.getServer().getAllPlayers())
+		// only players in or near the new area may happen to be inside it
+		for(Player player : PlayerIndex.getPlayersNear(area))
 		{
 			if (area.isPointInArea(player.getPosition()))	// if player happens to be inside the area,
 				onPlayerArea(player, area, true);			// notifyhim he just entered it
-			if ((boolean)player.getAttribute(AreaProtection.key_areasShown))
-				showAreaToPlayer(player, area);
 		}
+		// show the new area to any player with area display turned on
+		AreaViews.onAreaAdded(area);
 		return AreaProtection.ERR_SUCCESS;
 	}
 
@@ -358,20 +511,30 @@ public class Db
 		// remove from player caches and for areas shown to players
 		HashMap<Integer,Long>	inAreas;	// the areas the player is in w/ their permissions
 		HashMap<Integer,Long>	permAreas;	// the areas for which the player has special permissions
-		for(Player player : AreaProtection.plugin.getServer().getAllPlayers())
+		// only players in or near the area may be inside it; those actually inside
+		// it are made to leave it and their permissions re-computed all at once
+		List<Player>	leaving	= new ArrayList<>();
+		for(Player player : PlayerIndex.getPlayersNear(area))
 		{
 			if ( (inAreas = (HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_inAreas)) != null)
 			{
-				if (inAreas.remove(areaId) != null)		// if the player was inside this area,
-					onPlayerArea(player, area, false);	// norify him he left it
+				if (inAreas.remove(areaId) != null)		// if the player was inside this area
+					leaving.add(player);
 			}
-			if ( (permAreas	= (HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_areas)) != null)
+		}
+		// only players in the area player list may have special permissions for it
+		Server	server	= AreaProtection.plugin.getServer();
+		for (Integer playerId : area.players.keySet())
+		{
+			Player	player	= server.getPlayer(playerId);
+			if (player != null &&
+					(permAreas	= (HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_areas)) != null)
 				permAreas.remove(areaId);
-			if ((boolean)player.getAttribute(AreaProtection.key_areasShown))
-				player.removeWorldElement(area.worldArea);
 		}
 		// remove from local area list
-		areas.remove(area.id);
+		dropArea(area);
+		AreaViews.onAreaRemoved(area);
+		Recompute.players(leaving);
 		return AreaProtection.ERR_SUCCESS;
 	}
 
@@ -407,26 +570,28 @@ public class Db
 			return AreaProtection.ERR_DB;
 		}
 		// update local cache too
-		ProtArea	oldArea	= areas.get(area.id);	// get existing PermArea with same id
+		ProtArea	oldArea	= getWorkingArea(area.id);	// get existing PermArea with same id
 		if (oldArea != null)						// if any exists, check extent
 		{
-			// if extent is different, remove old RW area and add new
-			// (extent of RW areas cannot be changed, once created)
-			if (oldArea.getEndBlockPosition() != area.getEndBlockPosition() ||
-					oldArea.getEndChunkPosition() != area.getEndChunkPosition() ||
-					oldArea.getStartBlockPosition() != area.getStartBlockPosition() ||
-					oldArea.getStartChunkPosition() != area.getStartChunkPosition())
+			boolean	resized	= !sameExtent(oldArea, area);
+			// if a different object, remove old RW area and add new: extent of RW areas cannot
+			// be changed, once created, and areas in the registry are replaced rather than changed
+			if (area != oldArea)
 			{
 				AreaProtection.plugin.getServer().removeArea(oldArea);
 				AreaProtection.plugin.getServer().addArea(area);
 			}
 			// update PermArea in cache, unless it is the same object as the area it would replace
 			if (area != oldArea)
-				areas.put(area.id, area);
+			{
+				putArea(area);
+				AreaViews.onAreaReplaced(oldArea, area, resized);
+			}
+			if (resized)
+				updateAreaMembership(oldArea, area);
+			// default permissions may have changed: re-compute the players inside the area
+			Recompute.players(getPlayersInArea(area));
 		}
-		//
-		//	TODO : check for players included or excluded by area boundary changes
-		//
 		return AreaProtection.ERR_SUCCESS;
 	}
 
@@ -467,18 +632,22 @@ public class Db
 		{
 			stmt.setInt(1, playerId);
 			stmt.executeUpdate();
+			changeCount++;
+			area	= setAclEntry(area, type, playerId, permissions);
 			if (type == LIST_TYPE_GROUP)
-				area.groups.put(playerId, permissions);
+				refreshGroupInArea(area, playerId);
 			else
 			{
-				area.players.put(playerId, permissions);
 				// if the player is connected right now, add the details to the player
 				// list of areas for which he has special permissions
 				Player	player	= AreaProtection.plugin.getServer().getPlayer(playerId);
 				if (player != null)
 				{
 					if (area.id == AreaProtection.AREAMANAGER_AREAID)
+					{
 						player.setAttribute(AreaProtection.key_isAdmin, true);
+						Recompute.players(Collections.singletonList(player));
+					}
 					else
 					{
 						// the map with player-specific area permissions
@@ -487,6 +656,7 @@ public class Db
 								(HashMap<Integer, Long>)player.getAttribute(AreaProtection.key_areas);
 						if (permAreas != null)
 							permAreas.put(area.id, permissions);
+						refreshPlayerInArea(player, area);
 					}
 				}
 			}
@@ -519,18 +689,22 @@ public class Db
 		{
 			stmt.setInt(1, playerId);
 			stmt.executeUpdate();
+			changeCount++;
+			area	= setAclEntry(area, type, playerId, null);
 			if (type == LIST_TYPE_GROUP)
-				area.groups.remove(playerId);
+				refreshGroupInArea(area, playerId);
 			else
 			{
-				area.players.remove(playerId);
 				// if the player is connected right now, remove the details from the player
 				// list of areas for which he has special permissions
 				Player	player	= AreaProtection.plugin.getServer().getPlayer(playerId);
 				if (player != null)
 				{
 					if (area.id == AreaProtection.AREAMANAGER_AREAID)
+					{
 						player.setAttribute(AreaProtection.key_isAdmin, player.isAdmin());
+						Recompute.players(Collections.singletonList(player));
+					}
 					else
 					{
 						// the map with player-specific area permissions
@@ -539,6 +713,7 @@ public class Db
 								(HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_areas);
 						if (permAreas != null)
 							permAreas.remove(area.id);
+						refreshPlayerInArea(player, area);
 					}
 				}
 			}
@@ -597,7 +772,7 @@ public class Db
 		{
 			// if player is an admin, he has all the permissions,
 			// unless revoked by settings
-			if ((Boolean)player.getAttribute(AreaProtection.key_isAdmin) && !AreaProtection.adminNoPriv)
+			if (isPrivileged(player))
 				return AreaProtection.PERM_ALL;
 			// the map with player-specific area permissions
 			@SuppressWarnings("unchecked")
@@ -630,27 +805,97 @@ public class Db
 	static Map<Integer,ProtArea> getOwnedAreas(Player player)
 	{
 		// if player is an admin AND admin priviledges are not blocked, return the list of all known areas.
-		if ((Boolean)player.getAttribute(AreaProtection.key_isAdmin) && !AreaProtection.adminNoPriv)
+		if (isPrivileged(player))
 			return areas;
 
+		// the player-specific permissions are already cached in the player attributes
 		Map<Integer,ProtArea> ownedAreas	= new HashMap<>();
-		try(ResultSet result = db.executeQuery("SELECT area_id FROM `users` WHERE user_id = '" +
-				player.getDbID() + "' AND (u_perm & ("+
-				AreaProtection.PERM_OWNER + " | " + AreaProtection.PERM_ADDPLAYER + ")) != 0"))
+		@SuppressWarnings("unchecked")
+		HashMap<Integer,Long>	permAreas	=
+				(HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_areas);
+		if (permAreas == null)
+			return ownedAreas;
+		for (Map.Entry<Integer,Long> entry : permAreas.entrySet())
 		{
-			while(result.next())
-			{
-				int			id		= result.getInt(1);
-				ProtArea	area	= areas.get(id);
-				ownedAreas.put(id, area);
-			}
-			result.close();
+			if ((entry.getValue() & (AreaProtection.PERM_OWNER | AreaProtection.PERM_ADDPLAYER)) == 0)
+				continue;
+			ProtArea	area	= areas.get(entry.getKey());
+			if (area != null)
+				ownedAreas.put(entry.getKey(), area);
 		}
-		catch(SQLException e)
+		return ownedAreas;
+	}
+
+	/**
+	 * Returns the pseudo-area whose player list are the area managers.
+	 * <p>The area and its list are loaded with the other areas and then kept
+	 * current by addPlayerToArea() and removePlayerFromArea(), like any other area.
+	 * @return	the area managers pseudo-area.
+	 */
+	static ProtArea getManagersArea()
+	{
+		ProtArea	area	= managersArea;
+		if (area == null)
 		{
-			//on errors, do nothing and simply use what we got.
+			// areas not loaded yet: read the list from the DB
+			area	= new ProtArea(AreaProtection.AREAMANAGER_AREAID, 0, 0, 0,  0, 0, 0,
+					Msgs.msg[Msgs.gui_areaManagers], 0);
+			managersArea	= area;
 		}
-		return ownedAreas;
+		return area;
+	}
+
+	/**
+	 * Retrieves the areas owned by a player, sorted by name.
+	 * <p>For admins, who own all the areas, the sorted array is cached and only
+	 * sorted again after the area registry changed.
+	 * @param player	the player to retrieve areas for.
+	 * @return			an array of areas, sorted by name; the caller must not modify it.
+	 */
+	static ProtArea[] getOwnedAreasByName(Player player)
+	{
+		Map<Integer,ProtArea>	owned	= getOwnedAreas(player);
+		if (owned == areas)
+			return getAreasByName(owned);
+		List<ProtArea>	list	= new ArrayList<>(owned.size());
+		for (ProtArea area : owned.values())
+			if (area != null)
+				list.add(area);
+		ProtArea[]	array	= list.toArray(new ProtArea[list.size()]);
+		Arrays.sort(array, AREA_NAME_ORDER);
+		return array;
+	}
+
+	/**
+	 * Returns the index of the first area in a name-sorted array whose name starts
+	 * with a prefix, ignoring case. The following areas with the same prefix are contiguous.
+	 * @param	sorted	an array of areas as returned by getOwnedAreasByName().
+	 * @param	prefix	the prefix to look for; an empty prefix matches all areas.
+	 * @return	the index of the first matching area or sorted.length if none matches.
+	 */
+	static int findFirstAreaByName(ProtArea[] sorted, String prefix)
+	{
+		int	lo	= 0, hi	= sorted.length;
+		while (lo < hi)
+		{
+			int	mid	= (lo + hi) >>> 1;
+			if (String.CASE_INSENSITIVE_ORDER.compare(sorted[mid].getName(), prefix) < 0)
+				lo	= mid + 1;
+			else
+				hi	= mid;
+		}
+		return lo < sorted.length && areaNameStartsWith(sorted[lo], prefix) ? lo : sorted.length;
+	}
+
+	/**
+	 * Returns whether the name of an area starts with a prefix, ignoring case.
+	 * @param	area	the area.
+	 * @param	prefix	the prefix.
+	 * @return	true if the area name starts with the prefix.
+	 */
+	static boolean areaNameStartsWith(ProtArea area, String prefix)
+	{
+		return area.getName().regionMatches(true, 0, prefix, 0, prefix.length());
 	}
 
 	/**
@@ -662,7 +907,7 @@ public class Db
 	public static long getPlayerPermissionsForPoint(Player player, Vector3f point)
 	{
 		// if admin AND admins are not demoted, return all permissions
-		if ((Boolean)player.getAttribute(AreaProtection.key_isAdmin) && !AreaProtection.adminNoPriv)
+		if (isPrivileged(player))
 			return AreaProtection.PERM_ALL;
 
 		// retrieve the player group and convert group name into group ID
@@ -672,18 +917,19 @@ public class Db
 				groupId	= groupIds.get(groupName);
 
 		// retrieve the list of areas the player has specific permission for
+		// (none, if the player is no longer connected)
 		HashMap<Integer,Long>	playerPerms	= (HashMap<Integer, Long>)player.getAttribute(AreaProtection.key_areas);
 		long					cumulPerm	= AreaProtection.PERM_ALL;			// permissions default to everything
 
 		Long		aPerm;
-		// scan all areas to collect all areas which contain the point
-		for (ProtArea area : areas.values())
+		// scan the areas near the point to collect all areas which contain the point
+		for (ProtArea area : AreaIndex.getAreasNear(point))
 		{
 			// if the current area contains the point...
 			if (area.isPointInArea(point))
 			{
 				// ..check the player has special permissions to the area
-				if ( (aPerm=playerPerms.get(area.id)) == null)
+				if ( (aPerm = playerPerms != null ? playerPerms.get(area.id) : null) == null)
 					// if the player has no special permission,
 					// check the player belongs to a group
 					// and the area has special permissions for that group
@@ -712,14 +958,30 @@ public class Db
 	 */
 	public static long getPlayerPermissionsForBounding(Player player, BoundingInformation bi)
 	{
-		// if admin AND admins are not demoted, return all permissions
-		if ((Boolean)player.getAttribute(AreaProtection.key_isAdmin) && !AreaProtection.adminNoPriv)
-			return AreaProtection.PERM_ALL;
-
-		// convert bounding info into an area
+		// convert bounding info into a box
 		Vector3f	centre		= bi.getCenter();
 		Vector3f	minBoundary	= centre.subtract(bi.getXExtent(), bi.getYExtent(), bi.getZExtent());
 		Vector3f	maxBoundary	= centre.add(bi.getXExtent(), bi.getYExtent(), bi.getZExtent());
+		return getPlayerPermissionsForBox(player, minBoundary, maxBoundary);
+	}
+
+	/**
+	 * Gets the player permissions for an arbitrary 3D box.
+	 * The returned value is the bitwise AND of the player permissions for all the areas
+	 * which intersect the box, i.e. the strictest set of permissions available to the
+	 * player everywhere in the box.
+	 * @param	player		the player to retrieve permissions for
+	 * @param	minBoundary	the box corner with the lowest coordinates
+	 * @param	maxBoundary	the box corner with the highest coordinates
+	 * @return	the player permission for the box.
+	 */
+	@SuppressWarnings("unchecked")
+	static long getPlayerPermissionsForBox(Player player, Vector3f minBoundary, Vector3f maxBoundary)
+	{
+		// if admin AND admins are not demoted, return all permissions
+		if (isPrivileged(player))
+			return AreaProtection.PERM_ALL;
+
 		Area		boundArea	= new Area(minBoundary, maxBoundary);
 
 		// retrieve the player group and convert group name into group ID
@@ -729,19 +991,18 @@ public class Db
 				groupId	= groupIds.get(groupName);
 
 		// retrieve the list of areas the player has specific permission for
+		// (none, if the player is no longer connected)
 		HashMap<Integer,Long>	playerPerms	= (HashMap<Integer, Long>)player.getAttribute(AreaProtection.key_areas);
 		long					cumulPerm	= AreaProtection.PERM_ALL;			// permissions default to everything
 
 		Long		aPerm;
-		// scan all areas to collect all areas which intersect the bound area
-		for (ProtArea area : areas.values())
+		// scan the areas near the box to collect all areas which intersect it
+		for (ProtArea area : AreaIndex.getAreasNear(minBoundary, maxBoundary))
 		{
-			// if the current area contains the point...
-//			if (area.intersects(boundArea))
 			if (AreaProtection.areaIntersects(area, boundArea))
 			{
 				// ..check the player has special permissions to the area
-				if ( (aPerm=playerPerms.get(area.id)) == null)
+				if ( (aPerm = playerPerms != null ? playerPerms.get(area.id) : null) == null)
 					// if the player has no special permission,
 					// check the player belongs to a group
 					// and the area has special permissions for that group
@@ -772,22 +1033,23 @@ public class Db
 		return show;
 	}
 
+	/**
+	 * Turns the display of areas on for a given player; the areas near the
+	 * player are streamed to it by AreaViews.
+	 * @param player	the player
+	 */
 	static void showAreasToPlayer(Player player)
 	{
-		player.setAttribute(AreaProtection.key_areasShown, true);
-		for (Map.Entry<Integer,ProtArea> entry : areas.entrySet())
-			showAreaToPlayer(player, entry.getValue());
+		AreaViews.show(player);
 	}
 
+	/**
+	 * Turns the display of areas off for a given player.
+	 * @param player	the player
+	 */
 	static void hideAreasToPlayer(Player player)
 	{
-		player.setAttribute(AreaProtection.key_areasShown, false);
-		for (Map.Entry<Integer,ProtArea> entry : areas.entrySet())
-		{
-			ProtArea	area	= entry.getValue();
-			if (area.worldArea != null)
-				player.removeWorldElement(area.worldArea);
-		}
+		AreaViews.hide(player);
 	}
 
 	/**
@@ -797,42 +1059,299 @@ public class Db
 	 */
 	static String getPlayerNameFromId(int playerId)
 	{
-		if (playerNames == null)
-			initPLayers();
-		return playerNames.get(playerId);
+		return PlayerDirectory.getName(playerId);
 	}
 
-	static Set<Integer> getPlayerIdSet()
+	/**
+	 * Returns a counter incremented at each change of areas or area permissions;
+	 * caches of values derived from area data can compare it with the value they
+	 * were computed at, to know whether they are still valid.
+	 * @return	the current value of the change counter.
+	 */
+	static int getChangeCount()		{ return changeCount; }
+
+	/**
+	 * Removes a disconnecting player from the player caches and releases
+	 * the player data set up by loadPlayer().
+	 * @param	player	the disconnecting player.
+	 */
+	@SuppressWarnings("unchecked")
+	static void unloadPlayer(Player player)
 	{
-		if (playerNames == null)
-			initPLayers();
-		return playerNames.keySet();
+		Sessions.recycleMap((HashMap<Integer,Long>)player.deleteAttribute(AreaProtection.key_areas));
+		Sessions.recycleMap((HashMap<Integer,Long>)player.deleteAttribute(AreaProtection.key_inAreas));
+		player.deleteAttribute(AreaProtection.key_areaPerms);
+		player.deleteAttribute(AreaProtection.key_isAdmin);
+	}
+
+	/**
+	 * Opens a batch of changes to the area registry: until the matching call to
+	 * endAreaBatch(), changes are collected in a working copy and readers keep
+	 * seeing the registry as it was before the batch. Batches can be nested.
+	 */
+	static void beginAreaBatch()
+	{
+		synchronized(areasLock)
+		{
+			if (batchDepth++ == 0)
+				areasBatch	= new LinkedHashMap<>(areas);
+		}
 	}
 
-	static void resetPlayers()		{ playerNames = null; }
+	/**
+	 * Closes a batch of changes to the area registry, publishing all of them at once
+	 * when the outermost batch is closed.
+	 */
+	static void endAreaBatch()
+	{
+		synchronized(areasLock)
+		{
+			if (batchDepth == 0 || --batchDepth > 0)
+				return;
+			// bring the indexes in line with the batch, so that they agree with the published registry
+			for (ProtArea old : areas.values())
+				if (areasBatch.get(old.id) != old)
+					unindexArea(old);
+			for (ProtArea area : areasBatch.values())
+				if (areas.get(area.id) != area)
+					indexArea(area);
+			publishAreas(areasBatch);
+			areasBatch	= null;
+		}
+	}
 
 	//********************
 	// PRIVATE HELPER METHODS
 	//********************
 
-	private static void showAreaToPlayer(Player player, ProtArea area)
+	/**
+	 * Adds an area to the registry, replacing any area with the same id.
+	 * @param	area	the area to add.
+	 */
+	private static void putArea(ProtArea area)
 	{
-		if (area.worldArea == null)
+		synchronized(areasLock)
 		{
-			area.worldArea = new WorldArea(area);
-			area.worldArea.setColor(GeneralUtils.nextRandomColor(true));
-			area.worldArea.setAlwaysVisible(false);
+			if (areasBatch != null)
+			{
+				areasBatch.put(area.id, area);		// indexed when the batch is published
+				return;
+			}
+			Map<Integer,ProtArea>	map	= new LinkedHashMap<>(areas);
+			ProtArea				old	= map.put(area.id, area);
+			if (old != area)
+			{
+				if (old != null)
+					unindexArea(old);
+				indexArea(area);
+			}
+			publishAreas(map);
 		}
-		player.addWorldElement(area.worldArea);
 	}
 
 	/**
-		Retrieves all the areas currently defined, add them to the server and caches them.
+	 * Removes an area from the registry.
+	 * @param	area	the area to remove.
+	 */
+	private static void dropArea(ProtArea area)
+	{
+		synchronized(areasLock)
+		{
+			if (areasBatch != null)
+			{
+				areasBatch.remove(area.id);			// unindexed when the batch is published
+				return;
+			}
+			Map<Integer,ProtArea>	map	= new LinkedHashMap<>(areas);
+			ProtArea				old	= map.remove(area.id);
+			if (old != null)
+				unindexArea(old);
+			publishAreas(map);
+		}
+	}
+
+	/**
+	 * Adds, replaces or removes an entry of the player or group list of an area.
+	 * <p>The list is not changed in place, but replaced by a changed copy; if the
+	 * area was meanwhile replaced in the registry, the registry area is updated too.
+	 * @param	area		the area.
+	 * @param	type		LIST_TYPE_PLAYER, LIST_TYPE_GROUP or LIST_TYPE_MANAGERS.
+	 * @param	id			the player or group id.
+	 * @param	permissions	the new permissions or null to remove the entry.
+	 * @return	the current area with this id: the registry area, if any, or the area passed in.
+	 */
+	private static ProtArea setAclEntry(ProtArea area, int type, int id, Long permissions)
+	{
+		replaceAcl(area, type, id, permissions);
+		ProtArea	current	= getWorkingArea(area.id);
+		if (current == null)
+			return area;
+		if (current != area)
+			replaceAcl(current, type, id, permissions);
+		return current;
+	}
+
+	// replaces a list of an area with a copy with an entry changed, for setAclEntry()
+	private static void replaceAcl(ProtArea area, int type, int id, Long permissions)
+	{
+		Map<Integer,Long>	acl	= new HashMap<>(type == LIST_TYPE_GROUP ? area.groups : area.players);
+		if (permissions != null)
+			acl.put(id, permissions);
+		else
+			acl.remove(id);
+		if (type == LIST_TYPE_GROUP)
+			area.groups		= Collections.unmodifiableMap(acl);
+		else
+			area.players	= Collections.unmodifiableMap(acl);
+	}
+
+	/**
+	 * Returns an area from the registry, as seen by the thread changing it: if a batch
+	 * is open, from the working copy.
+	 * @param	id	the area id.
+	 * @return	the area or null if no area has this id.
+	 */
+	private static ProtArea getWorkingArea(int id)
+	{
+		synchronized(areasLock)
+		{
+			return areasBatch != null ? areasBatch.get(id) : areas.get(id);
+		}
+	}
+
+	// returns the areas of a registry snapshot sorted by name, sorting them only if the snapshot changed
+	private static synchronized ProtArea[] getAreasByName(Map<Integer,ProtArea> snapshot)
+	{
+		if (areasByNameSource != snapshot)
+		{
+			ProtArea[]	array	= snapshot.values().toArray(new ProtArea[snapshot.size()]);
+			Arrays.sort(array, AREA_NAME_ORDER);
+			areasByName			= array;
+			areasByNameSource	= snapshot;
+		}
+		return areasByName;
+	}
+
+	// called with areasLock held
+	private static void indexArea(ProtArea area)
+	{
+		AreaIndex.add(area);
+		AreaLod.add(area);
+	}
+
+	// called with areasLock held
+	private static void unindexArea(ProtArea area)
+	{
+		AreaIndex.remove(area);
+		AreaLod.remove(area);
+	}
+
+	// called with areasLock held
+	private static void publishAreas(Map<Integer,ProtArea> map)
+	{
+		areas	= Collections.unmodifiableMap(map);
+		changeCount++;
+	}
+
+	/**
+	 * Updates the players included or excluded by a change of the extent of an area.
+	 * <p>Only the players in the difference between the old and the new extent are
+	 * checked: their membership and cumulative permissions are updated right away.
+	 * An extent change is not a border crossing, so the enter / leave permissions
+	 * of the area do not apply.
+	 * @param	oldArea	the area with the old extent.
+	 * @param	newArea	the area with the new extent, already in the area cache.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void updateAreaMembership(ProtArea oldArea, ProtArea newArea)
+	{
+		for (Player player : PlayerIndex.getPlayersNearChange(oldArea, newArea))
+		{
+			HashMap<Integer,Long>	inAreas	= (HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_inAreas);
+			if (inAreas == null)
+				continue;
+			boolean	wasIn	= inAreas.containsKey(newArea.id);
+			boolean	isIn	= newArea.isPointInArea(player.getPosition());
+			if (wasIn == isIn)
+				continue;
+			// the area border moved, the player did not cross it: no PERM_ENTER / PERM_LEAVE gate
+			if (isIn)
+				inAreas.put(newArea.id, resolvePermission(newArea, isPrivileged(player),
+						(HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_areas),
+						getGroupId(player.getPermissionGroup())));
+			else
+				inAreas.remove(newArea.id);
+			updatePlayerSummary(player, inAreas);
+		}
+	}
+
+	/*
+	 * Re-computes the permissions of a player in an area after a change in the area ACL,
+	 * if the player is currently inside it; the player's other areas are not touched.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void refreshPlayerInArea(Player player, ProtArea area)
+	{
+		HashMap<Integer,Long>	inAreas	= (HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_inAreas);
+		if (inAreas == null || !inAreas.containsKey(area.id))
+			return;
+		inAreas.put(area.id, resolvePermission(area, isPrivileged(player),
+				(HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_areas),
+				getGroupId(player.getPermissionGroup())));
+		updatePlayerSummary(player, inAreas);
+	}
+
+	// re-computes the permissions of the online members of a group currently inside an area
+	private static void refreshGroupInArea(ProtArea area, int groupId)
+	{
+		for (Player player : GroupIndex.getMembers(groupId))
+			refreshPlayerInArea(player, area);
+	}
+
+	// the online players currently inside an area, according to their area lists
+	@SuppressWarnings("unchecked")
+	private static List<Player> getPlayersInArea(ProtArea area)
+	{
+		List<Player>	players	= new ArrayList<>();
+		for (Player player : PlayerIndex.getPlayersNear(area))
+		{
+			HashMap<Integer,Long>	inAreas	= (HashMap<Integer,Long>)player.getAttribute(AreaProtection.key_inAreas);
+			if (inAreas != null && inAreas.containsKey(area.id))
+				players.add(player);
+		}
+		return players;
+	}
+
+	// whether two areas have the same extent; RW areas do not compare by value
+	private static boolean sameExtent(Area area1, Area area2)
+	{
+		return sameVector(area1.getStartChunkPosition(), area2.getStartChunkPosition())
+				&& sameVector(area1.getStartBlockPosition(), area2.getStartBlockPosition())
+				&& sameVector(area1.getEndChunkPosition(), area2.getEndChunkPosition())
+				&& sameVector(area1.getEndBlockPosition(), area2.getEndBlockPosition());
+	}
+
+	private static boolean sameVector(Vector3i v1, Vector3i v2)
+	{
+		return v1.x == v2.x && v1.y == v2.y && v1.z == v2.z;
+	}
+
+	/**
+		Retrieves all the areas currently defined, with their player and group permissions.
+		Also loads the list of the area managers. Does not touch the server or the
+		registry, so it can be run on any thread.
+
+		@return	a Map from area id to area, in area name order, plus the area managers
+				pseudo-area with id AreaProtection.AREAMANAGER_AREAID; never null.
 	*/
-	private static void initAreas()
+	private static Map<Integer,ProtArea> loadAreas()
 	{
-		Server	server	= AreaProtection.plugin.getServer();
-		try(ResultSet result = db.executeQuery("SELECT * FROM `areas` ORDER BY `name`"))
+		// the permissions of all areas are loaded at once, rather than with two queries per area
+		Map<Integer,Map<Integer,Long>>	users	= loadAreaPermissions("SELECT area_id, user_id, u_perm FROM `users`");
+		Map<Integer,Map<Integer,Long>>	groups	= loadAreaPermissions("SELECT area_id, group_id, g_perm FROM `groups`");
+		Map<Integer,ProtArea>			loaded	= new LinkedHashMap<>();
+		try (Statement	stmt	= db.getConnection().createStatement();
+				ResultSet result = stmt.executeQuery("SELECT * FROM `areas` ORDER BY `name`"))
 		{
 			while(result.next())
 			{
@@ -845,16 +1364,86 @@ public class Db
 				int		toZ		= result.getInt(7);
 				int		perm	= result.getInt(8);
 				String	name	= result.getString(9);
-				ProtArea	area	= new ProtArea(id, fromX, fromY, fromZ, toX, toY, toZ, name, perm);
-				areas.put(id, area);
-				server.addArea(area);
+				Map<Integer,Long>	areaUsers	= users.get(id);
+				Map<Integer,Long>	areaGroups	= groups.get(id);
+				ProtArea	area	= new ProtArea(id, fromX, fromY, fromZ, toX, toY, toZ, name, perm,
+						areaUsers != null ? areaUsers : new HashMap<Integer,Long>(),
+						areaGroups != null ? areaGroups : new HashMap<Integer,Long>());
+				loaded.put(id, area);
+			}
+		}
+		catch(SQLException e)
+		{
+			//on errors, do nothing and simply use what we got.
+		}
+		// the area managers pseudo-area, published apart from the real areas
+		Map<Integer,Long>	managers	= users.get(AreaProtection.AREAMANAGER_AREAID);
+		loaded.put(AreaProtection.AREAMANAGER_AREAID,
+				new ProtArea(AreaProtection.AREAMANAGER_AREAID, 0, 0, 0,  0, 0, 0, null, 0,
+				managers != null ? managers : new HashMap<Integer,Long>(), new HashMap<Integer,Long>()));
+		return loaded;
+	}
+
+	/**
+		Runs a query returning (area id, player or group id, permissions) rows and
+		groups the results by area.
+	*/
+	private static Map<Integer,Map<Integer,Long>> loadAreaPermissions(String query)
+	{
+		Map<Integer,Map<Integer,Long>>	perms	= new HashMap<>();
+		// run the query from a separate statement, so that it can be
+		// run in parallel with other queries.
+		try (Statement	stmt	= db.getConnection().createStatement();
+				ResultSet result = stmt.executeQuery(query))
+		{
+			while(result.next())
+			{
+				int					areaId		= result.getInt(1);
+				Map<Integer,Long>	areaPerms	= perms.get(areaId);
+				if (areaPerms == null)
+				{
+					areaPerms	= new HashMap<>();
+					perms.put(areaId, areaPerms);
+				}
+				areaPerms.put(result.getInt(2), result.getLong(3));
 			}
-			result.close();
 		}
 		catch(SQLException e)
 		{
 			//on errors, do nothing and simply use what we got.
 		}
+		return perms;
+	}
+
+	/**
+		Publishes loaded areas in the registry and adds them to the server, and
+		publishes the area managers pseudo-area, named after the loaded texts;
+		to be called on the main thread.
+	*/
+	private static void publishLoadedAreas(Map<Integer,ProtArea> loaded)
+	{
+		if (loaded == null)
+			return;
+		ProtArea	managers	= loaded.remove(AreaProtection.AREAMANAGER_AREAID);
+		if (managers != null)
+		{
+			managers.name	= Msgs.msg[Msgs.gui_areaManagers];
+			managersArea	= managers;
+		}
+		Server	server	= AreaProtection.plugin.getServer();
+		beginAreaBatch();
+		try
+		{
+			for (ProtArea area : loaded.values())
+			{
+				putArea(area);
+				server.addArea(area);
+			}
+		}
+		finally
+		{
+			endAreaBatch();
+		}
 	}
 
 	/**
@@ -874,25 +1463,15 @@ public class Db
 		return null;
 	}
 
-	private static void initGroups()
-	{
-
-		groupNames	= new HashMap<>();
-		groupIds	= new HashMap<>();
-
-		// retrieve group ID's already in DB
-		Map<String, Integer>	dbGroups	= new HashMap<>();
-		try(ResultSet result = db.executeQuery("SELECT * FROM `perm_groups`"))
-		{
-			while(result.next())
-				dbGroups.put(result.getString(2), result.getInt(1));
-		}
-		catch(SQLException e)
-		{
-			//on errors, do nothing and simply use what we got.
-		}
+	/**
+		Scans the server permission group directory. Does not use the DB, so it can
+		be run on any thread, also while another thread uses the DB.
 
-		// retrieve permission groups from server directory
+		@return	the names of the permission group files; null if the server has no
+				group directory.
+	*/
+	private static String[] scanGroups()
+	{
 		String		path		= AreaProtection.plugin.getPath() + "/../../permissions/groups/";
 		File		groupDir	= new File(path);
 		String[]	rwGroups	= groupDir.list(new FilenameFilter()
@@ -905,6 +1484,33 @@ public class Db
 				}
 			}
 		);
+		return rwGroups;
+	}
+
+	/**
+		Merges the scanned permission groups with the groups in the DB, adding any
+		new group to it. Uses the DB, so it must not be run while another thread does.
+		Does not touch the published group maps.
+
+		@param	rwGroups	the group files as returned by scanGroups(); may be null.
+		@return	a Map from group id to group name; never null.
+	*/
+	private static Map<Integer,String> loadGroups(String[] rwGroups)
+	{
+		Map<Integer,String>		names		= new HashMap<>();
+
+		// retrieve group ID's already in DB
+		Map<String, Integer>	dbGroups	= new HashMap<>();
+		try(Statement stmt = db.getConnection().createStatement();
+				ResultSet result = stmt.executeQuery("SELECT * FROM `perm_groups`"))
+		{
+			while(result.next())
+				dbGroups.put(result.getString(2), result.getInt(1));
+		}
+		catch(SQLException e)
+		{
+			//on errors, do nothing and simply use what we got.
+		}
 
 		if (rwGroups != null)						// may be null if the plug-in is run on the Single Player
 		{											// which has no "permissions/groups" folder
@@ -933,28 +1539,29 @@ public class Db
 					}
 				}
 				if (id != null)
-				{
-					groupNames.put(i, name);
-					groupIds.put(name, i);
-				}
+					names.put(i, name);
 			}
 		}
+		return names;
 	}
 
-	private static void initPLayers()
+	/**
+		Publishes the permission groups, building the name to id look-up too.
+	*/
+	private static void setGroups(Map<Integer,String> names)
 	{
-		playerNames	= new HashMap<>();
-		// Query world data base for known players
-		WorldDatabase	worldDb = AreaProtection.plugin.getWorldDatabase();
-		try(ResultSet result = worldDb.executeQuery("SELECT `ID`,`Name` FROM `Player` ORDER BY `Name`ASC"))
-		{
-			while(result.next())
-				playerNames.put(result.getInt(1), result.getString(2));
-		}
-		catch(SQLException e)
-		{
-			//on errors, do nothing and simply use what we got.
-		}
+		Map<String,Integer>	ids	= new HashMap<>();
+		if (names == null)
+			names	= new HashMap<>();
+		for (Map.Entry<Integer,String> entry : names.entrySet())
+			ids.put(entry.getValue(), entry.getKey());
+		groupIds	= ids;
+		groupNames	= names;
+	}
+
+	private static String phaseTime(String phase, long nanos)
+	{
+		return phase + ": " + (nanos / 1000000) + " ms";
 	}
 
 	private static void AP3LUAImport()
@@ -970,7 +1577,8 @@ public class Db
 		HashMap<Integer, Integer>	oldId2NewId	= new HashMap<>();
 		// connect to the old LUA db
 		Database	oldDb	= AreaProtection.plugin.getSQLiteConnection(path + "/scriptDatabase.db");
-		// scan areas
+		// scan areas, publishing them all together at the end
+		beginAreaBatch();
 		try(ResultSet result = oldDb.executeQuery("SELECT * FROM `areas`"))
 		{
 			while(result.next())
@@ -993,6 +1601,10 @@ public class Db
 		{
 			//on errors, do nothing and simply use what we got.
 		}
+		finally
+		{
+			endAreaBatch();
+		}
 
 		// IMPORT RIGHTS
 
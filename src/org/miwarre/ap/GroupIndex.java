@@ -0,0 +1,146 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	GroupIndex.java - An index of the online players by permission group.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.risingworld.api.objects.Player;
+
+/**
+ * An index of the online players by RW permission group, so that the players
+ * affected by an edit of the group permissions of an area can be found in a
+ * time proportional to the group size.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>Groups are indexed by name, as group id's are only known for groups with
+ * a permission file. The index is updated when players connect and disconnect;
+ * as the API reports no event for a change of permission group, changes are
+ * detected when players move from a chunk to another and when the members of
+ * a group are retrieved (each member is then checked again).
+ */
+class GroupIndex
+{
+	// Fields
+	// the online players of each group
+	private static final	Map<String,Set<Player>>	members			= new HashMap<>();
+	// the group of each indexed player
+	private static final	Map<Player,String>		playerGroups	= new HashMap<>();
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Adds a player to the index, or updates its group if it changed.
+	 * @param	player	the player to add.
+	 * @return	true if the player was already indexed and its group changed, false otherwise.
+	 */
+	static synchronized boolean update(Player player)
+	{
+		String	newGroup	= player.getPermissionGroup();
+		if (newGroup == null)
+			newGroup	= "";
+		String	oldGroup	= playerGroups.put(player, newGroup);
+		if (newGroup.equals(oldGroup))
+			return false;
+		if (oldGroup != null)
+			removeFromGroup(oldGroup, player);
+		Set<Player>	group	= members.get(newGroup);
+		if (group == null)
+		{
+			group	= new LinkedHashSet<>();
+			members.put(newGroup, group);
+		}
+		group.add(player);
+		return oldGroup != null;
+	}
+
+	/**
+	 * Removes a player from the index.
+	 * @param	player	the player to remove.
+	 */
+	static synchronized void remove(Player player)
+	{
+		String	oldGroup	= playerGroups.remove(player);
+		if (oldGroup != null)
+			removeFromGroup(oldGroup, player);
+	}
+
+	/**
+	 * Empties the index.
+	 */
+	static synchronized void clear()
+	{
+		members.clear();
+		playerGroups.clear();
+	}
+
+	/**
+	 * Returns the number of indexed players.
+	 * @return	the number of players in the index.
+	 */
+	static synchronized int size()
+	{
+		return playerGroups.size();
+	}
+
+	/**
+	 * Returns the online members of a permission group.
+	 * <p>Members which changed group since they were indexed are moved to their
+	 * new group, have their permissions re-computed and are not returned.
+	 * @param	groupId	the id of the group.
+	 * @return	a new List of players; possibly empty, never null.
+	 */
+	static synchronized List<Player> getMembers(int groupId)
+	{
+		Map<Integer,String>	names	= Db.groupNames;
+		String				name	= names != null ? names.get(groupId) : null;
+		Set<Player>			group	= name != null ? members.get(name) : null;
+		if (group == null)
+			return new ArrayList<>(0);
+		List<Player>	players	= new ArrayList<>(group.size());
+		List<Player>	changed	= new ArrayList<>(0);
+		for (Player player : new ArrayList<>(group))
+		{
+			if (update(player))
+				changed.add(player);
+			else
+				players.add(player);
+		}
+		Recompute.players(changed);
+		return players;
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	private static void removeFromGroup(String groupName, Player player)
+	{
+		Set<Player>	group	= members.get(groupName);
+		if (group == null)
+			return;
+		group.remove(player);
+		if (group.isEmpty())
+			members.remove(groupName);
+	}
+}
@@ -133,7 +133,7 @@ class GuiAreaEdit extends GuiModalWindow
 		// if creating a new area and player is admin, he has access to all permissions
 		long	permMask	= (type == TYPE_CREATE && (Boolean)player.getAttribute(AreaProtection.key_isAdmin)) ? AreaProtection.PERM_ALL
 				// otherwise, use standard permission mask
-				: Db.getPlayerPermissionsForArea(player, area.id);
+				: AreaQueries.getEditingMask(player, area);
 		// if editing and player is neither admin or owner, he can only manage players
 		if (type == TYPE_EDIT && (!(Boolean)player.getAttribute(AreaProtection.key_isAdmin) || AreaProtection.adminNoPriv)
 					&& (permMask & AreaProtection.PERM_OWNER) == 0)
@@ -219,11 +219,20 @@ class GuiAreaEdit extends GuiModalWindow
 				updateDoButton();
 				return;
 			}
+			if (id == GuiAreaPerms.ALLBUTT_ID || id == GuiAreaPerms.NONEBUTT_ID)
+			{
+				permissGroup.setAll(id == GuiAreaPerms.ALLBUTT_ID);
+				updated	= true;
+				updateDoButton();
+				return;
+			}
 			switch (id)
 			{
-//			case GuiDefs.ABORT_ID:		// cancel button: already dealt with in super
-//				free();
-//				return;
+			case GuiDefs.ABORT_ID:		// cancel button: window already dealt with in super
+				// if creating a new area, end the NewAreaCreation procedure
+				if (type == TYPE_CREATE && nac != null)
+					nac.end();
+				return;
 			case NAMETEXT_ID:			// name text entry field
 				if (data != null)		// if a string is given, store it
 				{						// (no string is passed if the text field is just clicked on)
@@ -270,9 +279,15 @@ class GuiAreaEdit extends GuiModalWindow
 				updateDoButton();
 				break;
 			case DOBUTT_ID:				// the DO button (CREATE / UPDATE)
-				// store new/updated name & permissions in the area
-				area.name			= name;
-				area.permissions	= permissGroup.getPermissions();
+				// store new/updated name & permissions in the area; an area already in
+				// the registry is not changed in place, but replaced by an updated copy
+				if (type == TYPE_EDIT)
+					area	= area.copy(name, permissGroup.getPermissions());
+				else
+				{
+					area.name			= name;
+					area.permissions	= permissGroup.getPermissions();
+				}
 				// height range
 				if (type == TYPE_CREATE)
 				{
@@ -299,10 +314,10 @@ class GuiAreaEdit extends GuiModalWindow
 						area	= newArea;
 					}
 				}
-				// if creating a new area, stop the NewAreaCreation procedure
+				// if creating a new area, end the NewAreaCreation procedure
 				if (type == TYPE_CREATE && nac != null)
 				{
-					nac.stopRun();
+					nac.end();
 					Db.addArea(area);
 				}
 				// if editing an existing area, save its data
@@ -20,33 +20,53 @@ this plug-in.  If not, see <https://www.gnu.org/licenses/>.
 
 package org.miwarre.ap;
 
-import java.util.Map;
-import java.util.Map.Entry;
 import org.miwarre.ap.gui.GuiDefs;
-import org.miwarre.ap.gui.GuiMenu;
+import org.miwarre.ap.gui.GuiGroupStatic;
+import org.miwarre.ap.gui.GuiModalWindow;
+import org.miwarre.ap.gui.GuiScrollList;
+import net.risingworld.api.gui.GuiImage;
+import net.risingworld.api.gui.GuiLabel;
+import net.risingworld.api.gui.GuiTextField;
+import net.risingworld.api.gui.PivotPosition;
 import net.risingworld.api.objects.Player;
 
-class GuiAreaList extends GuiMenu
+/**
+ * A window to select an area to work on, among the areas owned by the player.
+ * <p>Areas are listed by name, one page at a time, and can be filtered by
+ * entering the beginning of their name in the search field. The list only
+ * holds the areas of the current page: the text of each row, with the area
+ * centre, is formatted when its page is shown.
+ */
+class GuiAreaList extends GuiModalWindow
 {
-	private static final	int			MAX_NUM_OF_MENULINES	= 25;
+	// Constants
+	private static final	int		PAGE_SIZE		= 20;
+	// Id's of controls; lower id's are area id's
+	private static final	int		NOAREA_ID		= 1;
+	private static final	int		SEARCH_ID		= 2000000;
+	private static final	int		PREV_ID			= SEARCH_ID + 1;
+	private static final	int		NEXT_ID			= SEARCH_ID + 2;
+
+	//
+	// FIELDS
+	//
 	private final	GuiDefs.GuiCallback	callback;
-	private			boolean				hasItems;
+	private final	AreaListPanel		panel;
+	private final	ProtArea[]			areas;		// the owned areas, sorted by name
+	private			int					first;		// the index in areas of the first match for the search
+	private			int					numOfMatches;
+	private			int					page;
 
 	public GuiAreaList(Player player, GuiDefs.GuiCallback callback)
 	{
-		super(AreaProtection.plugin, Msgs.msg[Msgs.gui_selectArea], null, MAX_NUM_OF_MENULINES);
+		super(AreaProtection.plugin, Msgs.msg[Msgs.gui_selectArea], GuiDefs.GROUPTYPE_NONE, 0, null);
 		setCallback(new MenuHandler());
 		this.callback	= callback;
-		hasItems		= false;
-		Map<Integer,ProtArea>	areas	= Db.getOwnedAreas(player);
-		for (Entry<Integer,ProtArea> entry : areas.entrySet())
-		{
-			ProtArea	area	= entry.getValue();
-			addTextItem(area.getName()+" ("+AreaProtection.getAreaCentre(area)+")", entry.getKey(), entry.getValue());
-			hasItems	= true;
-		}
-		if (!hasItems)
-			addTextItem(Msgs.msg[Msgs.gui_noOwnedArea], 1, null);
+		areas			= AreaQueries.getOwnedAreasByName(player);
+		panel			= new AreaListPanel();
+		setPanel(panel);
+		// the first page also creates all the rows any later page may need
+		search("");
 	}
 
 	//********************
@@ -58,14 +78,163 @@ class GuiAreaList extends GuiMenu
 		@Override
 		public void onCall(Player player, int id, Object obj)
 		{
-			if (id != GuiDefs.ABORT_ID)
+			switch (id)
 			{
-				pop(player);				// dismiss menu
-				if (!hasItems)				// if menu had no items, do nothing
-					id	= GuiDefs.ABORT_ID;	// and notify an ABORT
-				if (callback != null)
-					callback.onCall(player, id, obj);
+			case GuiDefs.ABORT_ID:
+				return;
+			case SEARCH_ID:
+				// text entered in the search field (a click on it has no data)
+				if (obj != null)
+				{
+					search(((String)obj).trim());
+					layout();
+				}
+				return;
+			case PREV_ID:
+				showPage(page - 1);
+				layout();
+				return;
+			case NEXT_ID:
+				showPage(page + 1);
+				layout();
+				return;
 			}
+			pop(player);				// dismiss menu
+			if (areas.length == 0)		// if menu had no items, do nothing
+				id	= GuiDefs.ABORT_ID;	// and notify an ABORT
+			if (callback != null)
+				callback.onCall(player, id, obj);
+		}
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	// selects the areas whose name starts with the prefix and shows the first page of them
+	private void search(String prefix)
+	{
+		first			= Db.findFirstAreaByName(areas, prefix);
+		// matches are contiguous: count them up to the first non-matching name
+		int	end			= first;
+		if (prefix.isEmpty())
+			end	= areas.length;
+		else
+			while (end < areas.length && Db.areaNameStartsWith(areas[end], prefix))
+				end++;
+		numOfMatches	= end - first;
+		showPage(0);
+	}
+
+	// fills the list with the areas of a page of the current matches
+	private void showPage(int newPage)
+	{
+		int	numOfPages	= (numOfMatches + PAGE_SIZE - 1) / PAGE_SIZE;
+		if (newPage >= numOfPages)
+			newPage	= numOfPages - 1;
+		if (newPage < 0)
+			newPage	= 0;
+		page	= newPage;
+		panel.list.clearItems();
+		if (areas.length == 0)
+			panel.list.addTextItem(Msgs.msg[Msgs.gui_noOwnedArea], NOAREA_ID, null);
+		int	from	= first + page * PAGE_SIZE;
+		int	to		= Math.min(first + numOfMatches, from + PAGE_SIZE);
+		for (int i = from; i < to; i++)
+		{
+			ProtArea	area	= areas[i];
+			panel.list.addTextItem(area.getName()+" ("+AreaProtection.getAreaCentre(area)+")", area.id, area);
+		}
+		panel.pageLabel.setText(numOfPages == 0 ? "" : (page + 1) + " / " + numOfPages);
+		setPageButton(panel.prevButton, page > 0);
+		setPageButton(panel.nextButton, page < numOfPages - 1);
+	}
+
+	private static void setPageButton(GuiImage button, boolean active)
+	{
+		button.setClickable(active);
+		button.setVisible(active);
+	}
+
+	//********************
+	// PANEL CLASS
+	//********************
+
+	/**
+	 * The main panel of the window: the search field, the list of areas and the page controls.
+	 */
+	private class AreaListPanel extends GuiGroupStatic
+	{
+		final	GuiLabel		searchLabel;
+		final	GuiTextField	searchText;
+		final	GuiScrollList	list;
+		final	GuiImage		prevButton;
+		final	GuiImage		nextButton;
+		final	GuiLabel		pageLabel;
+
+		AreaListPanel()
+		{
+			super(0);
+			setMargin(GuiDefs.DEFAULT_PADDING);
+			// The SEARCH field
+			searchLabel	= addTextItem(Msgs.msg[Msgs.gui_searchName], null, null);
+			searchText	= new GuiTextField(0, 0, false, 100, GuiDefs.TEXTENTRY_HEIGHT, false);
+			addChild(searchText, SEARCH_ID, null);
+			// The AREA LIST
+			list	= new GuiScrollList(PAGE_SIZE, true);
+			addChild(list, null, null);
+			list.setBorderThickness(1, false);
+			list.setMargin(GuiDefs.DEFAULT_PADDING);
+			// The PAGE controls
+			prevButton	= new GuiImage(0, 0, false, GuiDefs.BUTTON_SIZE, GuiDefs.BUTTON_SIZE, false);
+			GuiDefs.setImage(prevButton, GuiDefs.ICN_ARROW_LEFT);
+			prevButton.setPivot(PivotPosition.TopLeft);
+			addChild(prevButton, PREV_ID, null);
+			nextButton	= new GuiImage(0, 0, false, GuiDefs.BUTTON_SIZE, GuiDefs.BUTTON_SIZE, false);
+			GuiDefs.setImage(nextButton, GuiDefs.ICN_ARROW_RIGHT);
+			nextButton.setPivot(PivotPosition.TopRight);
+			addChild(nextButton, NEXT_ID, null);
+			pageLabel	= addTextItem("", null, null);
+			pageLabel.setPivot(PivotPosition.Center);
+		}
+
+		/**
+		 * Arranges the elements inside the panel.
+		 * 
+		 * @param	minWidth	the minimum width required by the context within which the
+		 *						group is placed; use 0 if there no external constrains.
+		 * @param	minHeight	the minimum height required by the context within which the
+		 *						group is placed; use 0 if there no external constrains.
+		 */
+		@Override
+		public void layout(int minWidth, int minHeight)
+		{
+			int	margin	= getMargin();
+			int	padding	= getPadding();
+			list.layout(minWidth - 2*margin, 0);
+			int	width	= (int)list.getWidth() + 2*margin;
+			if (minWidth > width)
+				width	= minWidth;
+			int	height	= (int)list.getHeight() + GuiDefs.ITEM_SIZE + GuiDefs.TEXTENTRY_HEIGHT
+//						the height of the list	search label & field
+					+ GuiDefs.BUTTON_SIZE + 3*padding + 2*margin;
+//					page controls & paddings
+			if (minHeight > height)
+				height	= minHeight;
+			setSize(width, height, false);
+
+			// position the individual children
+			height	-= margin;									// move below the top margin
+			searchLabel.setPosition(margin, height, false);
+			height	-= GuiDefs.ITEM_SIZE + padding;				// move below the search label
+			searchText.setSize(width - 2*margin, GuiDefs.TEXTENTRY_HEIGHT, false);
+			searchText.setPosition(margin, height, false);
+			height	-= GuiDefs.TEXTENTRY_HEIGHT + padding;		// move below the search field
+			list.setPosition(margin, height, false);
+			height	-= list.getHeight() + padding;				// move below the list
+			prevButton.setPosition(margin, height, false);
+			nextButton.setPosition(width - margin, height, false);
+			pageLabel.setPosition(width / 2, height - GuiDefs.BUTTON_SIZE / 2, false);
 		}
 	}
 
@@ -24,12 +24,16 @@ import org.miwarre.ap.gui.GuiDefs;
 import org.miwarre.ap.gui.GuiGroupStatic;
 import net.risingworld.api.gui.GuiImage;
 import net.risingworld.api.gui.GuiLabel;
+import net.risingworld.api.gui.PivotPosition;
 
 /**
  * A GuiGroupStatic panel to set/reset individual permissions for an area.
  * 
  * <p>It is intended to be used as part of a large GuiModalwindow.
  * <p>Permissions can be masked out to restrict editing to some permissions only.
+ * <p>Check box images are only updated for the permissions which actually
+ * change: all the changes of a bulk operation (set all, set none, re-bind
+ * to new permissions) are applied in a single pass over the grid.
  */
 class GuiAreaPerms extends GuiGroupStatic
 {
@@ -61,10 +65,16 @@ class GuiAreaPerms extends GuiGroupStatic
 	// Control positions Y: the columns of permissions
 	private static final	int		COLUMN_TOP_Y	= HEADING_Y - GuiDefs.ITEM_SIZE - GuiDefs.DEFAULT_PADDING;
 
+	// Id's of the bulk buttons; the first NUM_OF_PLAYERPERMS id's, starting from 1, are the check boxes
+	// and containing dialogue boxes use the id's immediately following them
+			static final	int		ALLBUTT_ID		= 1000;
+			static final	int		NONEBUTT_ID		= ALLBUTT_ID + 1;
+
 	//
 	// FIELDS
 	//
 	private	long			permissions;
+	private	long			editable;		// the permissions with a check box
 	private GuiImage[]		permOnOff;
 
 	/**
@@ -85,6 +95,18 @@ class GuiAreaPerms extends GuiGroupStatic
 		label	= addTextItem(Msgs.msg[forArea ? Msgs.gui_editPermissGeneral :
 				Msgs.gui_editPermissSpecific], null, null);
 		label.setPosition(HEADING_X, HEADING_Y, false);
+		// The bulk buttons, right aligned on the heading row
+		label	= addTextItem(Msgs.msg[Msgs.gui_permNone], NONEBUTT_ID, null);
+		label.setPivot(PivotPosition.TopRight);
+		label.setPosition(PANEL_WIDTH - GuiDefs.DEFAULT_PADDING, HEADING_Y, false);
+		label.setColor(GuiDefs.ACTIVE_COLOUR);
+		label.setClickable(true);
+		int		noneWidth	= (int)GuiDefs.getTextWidth(Msgs.msg[Msgs.gui_permNone], GuiDefs.ITEM_SIZE);
+		label	= addTextItem(Msgs.msg[Msgs.gui_permAll], ALLBUTT_ID, null);
+		label.setPivot(PivotPosition.TopRight);
+		label.setPosition(PANEL_WIDTH - noneWidth - 3 * GuiDefs.DEFAULT_PADDING, HEADING_Y, false);
+		label.setColor(GuiDefs.ACTIVE_COLOUR);
+		label.setClickable(true);
 		// The individual permissions
 		permOnOff			= new GuiImage[NUM_OF_PLAYERPERMS];	// the check boxes
 		int		permId		= -1;								// the current permission id
@@ -114,6 +136,7 @@ class GuiAreaPerms extends GuiGroupStatic
 					GuiDefs.setImage(permOnOff[permId], (permissions & currFlag) != 0 ?
 							GuiDefs.ICN_CHECK : GuiDefs.ICN_CROSS);
 					permOnOff[permId].setPosition(x+CHECKBOX_X, y, false);
+					editable	|= currFlag;
 				}
 				// add the text label and set its position in the panel
 				label	= addTextItem(Msgs.msg[Msgs.gui_editPermFirst + permId], null, null);
@@ -129,12 +152,41 @@ class GuiAreaPerms extends GuiGroupStatic
 
 	long	getPermissions()	{ return permissions;  }
 
+	/**
+	 * Sets the permissions shown by the panel, for a bulk change or for re-using
+	 * the panel with another area or player; the check boxes which change are
+	 * updated in a single pass, the others are not touched.
+	 * @param	newPerms	the new permissions.
+	 */
+	void setPermissions(long newPerms)
+	{
+		long	changed	= permissions ^ newPerms;
+		permissions		= newPerms;
+		if (changed == 0)
+			return;
+		for (int i = 0; i < permOnOff.length; i++)
+		{
+			long	flag	= AreaProtection.permIdx2bit[i];
+			if (permOnOff[i] != null && (changed & flag) != 0)
+				GuiDefs.setImage(permOnOff[i], (newPerms & flag) != 0 ?
+						GuiDefs.ICN_CHECK : GuiDefs.ICN_CROSS);
+		}
+	}
+
 	boolean togglePermission(int index)
 	{
 		long	permToggle	= AreaProtection.permIdx2bit[index];
-		permissions	^= permToggle;
-		GuiDefs.setImage(permOnOff[index], (permissions & permToggle) != 0 ? 
-				GuiDefs.ICN_CHECK : GuiDefs.ICN_CROSS);
+		setPermissions(permissions ^ permToggle);
 		return (permissions & permToggle) != 0;
 	}
+
+	/**
+	 * Turns all the editable permissions on or off; the permissions which
+	 * cannot be edited are left unchanged.
+	 * @param	on	true to turn the permissions on, false to turn them off.
+	 */
+	void setAll(boolean on)
+	{
+		setPermissions(on ? permissions | editable : permissions & ~editable);
+	}
 }
@@ -20,9 +20,9 @@ this plug-in.  If not, see <https://www.gnu.org/licenses/>.
 
 package org.miwarre.ap;
 
-import java.util.Map;
 import org.miwarre.ap.gui.GuiDefs;
 import org.miwarre.ap.gui.GuiModalWindow;
+import org.miwarre.ap.gui.GuiPool;
 import org.miwarre.ap.gui.GuiTitleBar;
 import org.miwarre.ap.gui.GuiDefs.GuiCallback;
 import net.risingworld.api.gui.GuiLabel;
@@ -31,6 +31,8 @@ import net.risingworld.api.objects.Player;
 
 /**
  * A dialogue box to edit the permission given to a player for an area
+ * <p>The dialogue box is recyclable: obtain() re-binds the one kept in the
+ * GuiPool of the editing player to the new area and player, when possible.
  */
 class GuiAreaPlayerEdit extends GuiModalWindow
 {
@@ -56,14 +58,17 @@ class GuiAreaPlayerEdit extends GuiModalWindow
 	//
 	// FIELDS
 	//
-	private final	GuiCallback		callerCallback;
+	private			GuiCallback		callerCallback;
 	private			long			permissions;
-	private final	int				permPlayerId;
-	private final	String			permPlayerName;
+	private			long			permMask;
+	private			int				permPlayerId;
+	private			String			permPlayerName;
 	private			boolean			updated;
 	// GUI elements
 	private final	GuiAreaPerms	permissGroup;
 	private final	GuiLabel		doButton;
+	private final	GuiLabel		areaNameLabel;
+	private final	GuiLabel		playerNameLabel;
 
 	/**
 	 * Creates a new dialogue box.
@@ -96,35 +101,19 @@ class GuiAreaPlayerEdit extends GuiModalWindow
 		setPanelSize(width, PANEL_HEIGHT);
 
 		// the AREA and PLAYER LABELS and NAMES
-		// none of them can be interacted with, then we do not need to remember them
+		// none of them can be interacted with; names are only remembered to re-bind the dialogue box
 		GuiLabel label	= addTextItem(Msgs.msg[Msgs.gui_areaName], null, null);
 		label.setPivot(PivotPosition.TopRight);
 		label.setPosition(NAME_LBL_X, AREA_LBL_Y, false);
-		label	= addTextItem(area.name, null, null);
-		label.setPosition(NAME_TXT_X, AREA_LBL_Y, false);
+		areaNameLabel	= addTextItem(area.name, null, null);
+		areaNameLabel.setPosition(NAME_TXT_X, AREA_LBL_Y, false);
 		label	= addTextItem(Msgs.msg[Msgs.gui_playerName], null, null);
 		label.setPivot(PivotPosition.TopRight);
 		label.setPosition(NAME_LBL_X, PLAYER_LBL_Y, false);
-		label	= addTextItem(permPlayerName, null, null);
-		label.setPosition(NAME_TXT_X, PLAYER_LBL_Y, false);
+		playerNameLabel	= addTextItem(permPlayerName, null, null);
+		playerNameLabel.setPosition(NAME_TXT_X, PLAYER_LBL_Y, false);
 
-		// retrieve the permissions granted to the target player for this area
-		// (used to initialise the permission panel check boxes)
-		Map<Integer,Long>	areaPerms	=
-				Db.getAllPlayerPermissionsForArea(area.id, type);
-		Long	areaPerm	= areaPerms.get(permPlayerId);
-		// if this player has no special permissions for this area,
-		// default to general area permissions
-		permissions	= (areaPerm == null) ? permissions	= area.permissions : areaPerm;
-		// retrieve the permissions granted to the player doing the editing,
-		// (used to mask the permissions to which the editing player has no access)
-		long	permMask	= Db.getPlayerPermissionsForArea(editingPlayer, area.id);
-		// OWNERship permissions is not transferable
-		if (!(Boolean)editingPlayer.getAttribute(AreaProtection.key_isAdmin) || AreaProtection.adminNoPriv)
-		{
-			permissions	&= ~AreaProtection.PERM_OWNER;
-			permMask	&= ~AreaProtection.PERM_OWNER;
-		}
+		readPermissions(editingPlayer, area, type, permPlayerId);
 
 		// the PERMISSIONS group
 		permissGroup	= new GuiAreaPerms(permissions, permMask, false);
@@ -136,6 +125,37 @@ class GuiAreaPlayerEdit extends GuiModalWindow
 		doButton.setPivot(PivotPosition.Center);
 		doButton.setPosition(width / 2, DO_BUTT_Y, false);
 		updateDoButton();
+		setRecyclable(true);
+	}
+
+	/**
+	 * Returns a dialogue box for the given area and player, re-using the one kept
+	 * in the pool of the editing player if it has the same editable permissions.
+	 * The parameters are the same as for the constructor.
+	 */
+	static GuiAreaPlayerEdit obtain(Player editingPlayer, ProtArea area, int permPlayerId,
+			String permPlayerName, int type, GuiCallback callback)
+	{
+		GuiAreaPlayerEdit	dlg		= GuiPool.obtain(editingPlayer, GuiAreaPlayerEdit.class);
+		if (dlg == null)
+			return new GuiAreaPlayerEdit(editingPlayer, area, permPlayerId, permPlayerName, type, callback);
+		long	oldMask	= dlg.permMask;
+		dlg.readPermissions(editingPlayer, area, type, permPlayerId);
+		if (dlg.permMask != oldMask)
+		{
+			// a different set of check boxes is needed
+			dlg.discard(editingPlayer);
+			return new GuiAreaPlayerEdit(editingPlayer, area, permPlayerId, permPlayerName, type, callback);
+		}
+		dlg.callerCallback	= callback;
+		dlg.permPlayerId	= permPlayerId;
+		dlg.permPlayerName	= permPlayerName;
+		dlg.updated			= false;
+		dlg.areaNameLabel.setText(area.name);
+		dlg.playerNameLabel.setText(permPlayerName);
+		dlg.permissGroup.setPermissions(dlg.permissions);
+		dlg.updateDoButton();
+		return dlg;
 	}
 
 	//
@@ -170,6 +190,13 @@ class GuiAreaPlayerEdit extends GuiModalWindow
 				updateDoButton();
 				return;
 			}
+			if (id == GuiAreaPerms.ALLBUTT_ID || id == GuiAreaPerms.NONEBUTT_ID)
+			{
+				permissGroup.setAll(id == GuiAreaPerms.ALLBUTT_ID);
+				updated	= (permissions != permissGroup.getPermissions());
+				updateDoButton();
+				return;
+			}
 			switch (id)
 			{
 //			case GuiDefs.ABORT_ID:		// cancel button: already dealt with in super
@@ -188,6 +215,28 @@ class GuiAreaPlayerEdit extends GuiModalWindow
 	// PRIVATE HELPER METHODS
 	//********************
 
+	/**
+	 * Retrieves the permissions of the target player and the mask of the permissions
+	 * the editing player can edit, into the permissions and permMask fields.
+	 */
+	private void readPermissions(Player editingPlayer, ProtArea area, int type, int targetId)
+	{
+		// retrieve the permissions granted to the target player for this area
+		// (used to initialise the permission panel check boxes)
+		// (if this player has no special permissions for this area,
+		// default to general area permissions)
+		permissions	= AreaQueries.getPermissionsFor(area, type, targetId);
+		// retrieve the permissions granted to the player doing the editing,
+		// (used to mask the permissions to which the editing player has no access)
+		permMask	= AreaQueries.getEditingMask(editingPlayer, area);
+		// OWNERship permissions is not transferable
+		if (!(Boolean)editingPlayer.getAttribute(AreaProtection.key_isAdmin) || AreaProtection.adminNoPriv)
+		{
+			permissions	&= ~AreaProtection.PERM_OWNER;
+			permMask	&= ~AreaProtection.PERM_OWNER;
+		}
+	}
+
 	/**
 	 * Activates / de-activates the DO button according to dialogue box conditions
 	 * Activation requires something to have been updated.
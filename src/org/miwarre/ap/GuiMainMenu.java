@@ -23,11 +23,11 @@ package org.miwarre.ap;
 //import java.util.ArrayList;
 //import net.risingworld.api.callbacks.Callback;
 import java.util.Map;
-import net.risingworld.api.gui.GuiLabel;
 //import net.risingworld.api.objects.Chest;
 import org.miwarre.ap.gui.GuiDefs;
 import org.miwarre.ap.gui.GuiDefs.GuiCallback;
 import org.miwarre.ap.gui.GuiMenu;
+import org.miwarre.ap.gui.GuiPool;
 import net.risingworld.api.objects.Player;
 //import net.risingworld.api.utils.CollisionType;
 //import net.risingworld.api.utils.RayCastResult;
@@ -36,6 +36,9 @@ import net.risingworld.api.objects.Player;
 /**
  * The plug-in main menu. It is the main UI entry point for the plug-in.
  * <p>Relies on gui/GuiMenu.
+ * <p>The menu is recyclable: once closed, it is kept in the GuiPool of the player
+ * and shown again with open(), after updating the texts of the items which depend
+ * on the current state.
  */
 class GuiMainMenu extends GuiMenu
 {
@@ -50,13 +53,13 @@ class GuiMainMenu extends GuiMenu
 	private static final	int		MENU_CHESTACCESS_ID		= 5;
 	private static final	int		MENU_AREAMANAGERS_ID	= 6;
 	private static final	int		MENU_ADMINSACCESS_ID	= 7;
-	private static final	int		AREACREAT_PRIORITY		= 3;
 
 	//
 	// FIELDS
 	//
-//	private final	GuiLabel	hideShowMenuItem;
-//	private			GuiLabel	adminMenuItem;
+	// which sets of items the menu was built with
+	private final	boolean		hasCreationItems;
+	private final	boolean		hasAdminItems;
 
 	public GuiMainMenu(Player player)
 	{
@@ -65,17 +68,20 @@ class GuiMainMenu extends GuiMenu
 		super(AreaProtection.plugin, Msgs.msg[Msgs.gui_title], null);
 		// create and set the callback
 		setCallback(new MenuHandler());
+		setRecyclable(true);
+		hasCreationItems	= hasCreationItems(player);
+		hasAdminItems		= hasCreationItems && player.isAdmin();
 		// add the common menu items
 		addTextItem(Msgs.msg[(boolean)player.getAttribute(AreaProtection.key_areasShown) ?
 				Msgs.gui_hideAreas : Msgs.gui_showAreas], MENU_SHOWAREAS_ID, null);
 		addTextItem(Msgs.msg[Msgs.gui_editArea],	MENU_EDITAREA_ID, null);
 		// add the admin-specific menu items, if required
-		if ( (Boolean)player.getAttribute(AreaProtection.key_isAdmin) || !AreaProtection.adminOnly)
+		if (hasCreationItems)
 		{
 			addTextItem(Msgs.msg[Msgs.gui_newArea],		MENU_NEWAREA_ID,		null);
 			addTextItem(Msgs.msg[Msgs.gui_deleteArea],	MENU_DELETEAREA_ID,		null);
 			addTextItem(Msgs.msg[Msgs.gui_chestAccess], MENU_CHESTACCESS_ID,	null);
-			if (player.isAdmin())
+			if (hasAdminItems)
 			{
 				addTextItem(Msgs.msg[Msgs.gui_areaManagers],MENU_AREAMANAGERS_ID,	null);
 				addTextItem(Msgs.msg[AreaProtection.adminNoPriv ?
@@ -84,6 +90,49 @@ class GuiMainMenu extends GuiMenu
 		}
 	}
 
+	/**
+	 * Shows the main menu to a player, re-using the menu kept in the player pool, if any.
+	 * @param	player	the player to show the menu to.
+	 */
+	static void open(Player player)
+	{
+		GuiMainMenu	menu	= GuiPool.obtain(player, GuiMainMenu.class);
+		if (menu != null && !menu.rebind(player))
+		{
+			// the player rights changed and the menu has different items: build a new one
+			menu.discard(player);
+			menu	= null;
+		}
+		if (menu == null)
+			menu	= new GuiMainMenu(player);
+		menu.show(player);
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	// whether the player can create and delete areas
+	private static boolean hasCreationItems(Player player)
+	{
+		return (Boolean)player.getAttribute(AreaProtection.key_isAdmin) || !AreaProtection.adminOnly;
+	}
+
+	// updates the texts depending on the current state; returns false if the menu
+	// items themselves no longer match the player rights
+	private boolean rebind(Player player)
+	{
+		boolean	creation	= hasCreationItems(player);
+		if (creation != hasCreationItems || (creation && player.isAdmin()) != hasAdminItems)
+			return false;
+		setItemText(MENU_SHOWAREAS_ID, Msgs.msg[(boolean)player.getAttribute(AreaProtection.key_areasShown) ?
+				Msgs.gui_hideAreas : Msgs.gui_showAreas]);
+		if (hasAdminItems)
+			setItemText(MENU_ADMINSACCESS_ID, Msgs.msg[AreaProtection.adminNoPriv ?
+					Msgs.gui_adminsOn : Msgs.gui_adminsOff]);
+		return true;
+	}
+
 	//********************
 	// HANDLERS
 	//********************
@@ -100,22 +149,18 @@ class GuiMainMenu extends GuiMenu
 			{
 			case MENU_SHOWAREAS_ID:
 				boolean	show	= AreaProtection.togglePlayerAreas(player);
-				GuiLabel	menuItem	= (GuiLabel)getChildFromId(MENU_SHOWAREAS_ID);
-				if (menuItem != null)
-					menuItem.setText(Msgs.msg[show ? Msgs.gui_hideAreas : Msgs.gui_showAreas]);
+				setItemText(MENU_SHOWAREAS_ID, Msgs.msg[show ? Msgs.gui_hideAreas : Msgs.gui_showAreas]);
 				break;
 			case MENU_NEWAREA_ID:
 				pop(player);		// dismiss the menu; the other choices keep it for further commands
-				NewAreaCreation nac	= new NewAreaCreation(player);
-				nac.setPriority(AREACREAT_PRIORITY);
-				nac.start();
+				new NewAreaCreation(player).start();
 				break;
 			case MENU_EDITAREA_ID:
 				Map<Integer,Long> areas = (Map<Integer,Long>)player.getAttribute(AreaProtection.key_inAreas);
 				// if inside some area(s), jump to edit the first of them
 				if (areas != null && !areas.isEmpty())
 				{
-					ProtArea	area	= Db.getAreaFromId((int) areas.keySet().toArray()[0]);
+					ProtArea	area	= AreaQueries.getArea((int) areas.keySet().toArray()[0]);
 					push(player, new GuiAreaEdit(null, area, player, GuiAreaEdit.TYPE_EDIT));
 				}
 				else
@@ -130,18 +175,16 @@ class GuiMainMenu extends GuiMenu
 //				player.raycast(CollisionType.OBJECTS, new RaycastHandler());
 //				break;
 			case MENU_AREAMANAGERS_ID:
-				ProtArea	area	= new ProtArea(AreaProtection.AREAMANAGER_AREAID,
-						0, 0, 0,  0, 0, 0,  Msgs.msg[Msgs.gui_areaManagers], 0);
-				//		from		to			name						permissions
-				push(player, new GuiPlayersEdit(area, Db.LIST_TYPE_MANAGERS));
+				push(player, new GuiPlayersEdit(AreaQueries.getManagersArea(), Db.LIST_TYPE_MANAGERS));
 				break;
 			case MENU_ADMINSACCESS_ID:
 				// flip admin privileges
 				AreaProtection.adminNoPriv = !AreaProtection.adminNoPriv;
+				// the permissions of online admins in their current areas are now different
+				Recompute.all();
 				// update menu item text
-				menuItem	= (GuiLabel)getChildFromId(MENU_ADMINSACCESS_ID);
-				if (menuItem != null)
-					menuItem.setText(Msgs.msg[AreaProtection.adminNoPriv ? Msgs.gui_adminsOn : Msgs.gui_adminsOff]);
+				setItemText(MENU_ADMINSACCESS_ID,
+						Msgs.msg[AreaProtection.adminNoPriv ? Msgs.gui_adminsOn : Msgs.gui_adminsOff]);
 				break;
 			}
 		}
@@ -20,6 +20,7 @@ this plug-in.  If not, see <https://www.gnu.org/licenses/>.
 
 package org.miwarre.ap;
 
+import java.util.Map;
 import java.util.Map.Entry;
 import org.miwarre.ap.gui.GuiDefs;
 import org.miwarre.ap.gui.GuiDefs.GuiCallback;
@@ -114,7 +115,7 @@ class GuiPlayersEdit extends GuiModalWindow
 			case EDITBUTT_ID:			// "EDIT player permissions" button
 				if (selPlayerIdx != UNKNOWN_ID && selPlayerName != null)
 				{
-					playerEditor	= new GuiAreaPlayerEdit(player, area,
+					playerEditor	= GuiAreaPlayerEdit.obtain(player, area,
 							selPlayerIdx, selPlayerName, type, new PlayerHandler());
 					push(player, playerEditor);
 				}
@@ -239,11 +240,12 @@ class GuiPlayersEdit extends GuiModalWindow
 			addChild(playerList, null, null);
 			playerList.setBorderThickness(1, false);
 			playerList.setMargin(GuiDefs.DEFAULT_PADDING);
-			for (Entry<Integer,Long> entry :
-				(type == Db.LIST_TYPE_GROUP ? area.groups : area.players).entrySet())
+			Map<Integer,Long>	acl		= AreaQueries.getAcl(area, type);
+			Map<Integer,String>	names	= AreaQueries.getNames(acl.keySet(), type);
+			for (Entry<Integer,Long> entry : acl.entrySet())
 			{
 				int		playerId	= entry.getKey();
-				String	playerName	= Db.getPlayerNameFromId(playerId);
+				String	playerName	= names.get(playerId);
 				String	txt	= playerName;
 				if (type != Db.LIST_TYPE_MANAGERS)
 					txt	+= " (" + AreaProtection.getPresetNameFromPermissions(entry.getValue()) + ")";
@@ -20,8 +20,8 @@ this plug-in.  If not, see <https://www.gnu.org/licenses/>.
 
 package org.miwarre.ap;
 
+import java.util.List;
 import java.util.Map.Entry;
-import java.util.Set;
 import org.miwarre.ap.gui.GuiDefs;
 import org.miwarre.ap.gui.GuiGroupStatic;
 import org.miwarre.ap.gui.GuiDefs.GuiCallback;
@@ -29,6 +29,7 @@ import org.miwarre.ap.gui.GuiModalWindow;
 import org.miwarre.ap.gui.GuiScrollList;
 import net.risingworld.api.Plugin;
 import net.risingworld.api.gui.GuiLabel;
+import net.risingworld.api.gui.GuiTextField;
 import net.risingworld.api.gui.PivotPosition;
 import net.risingworld.api.objects.Player;
 
@@ -38,7 +39,11 @@ class GuiTwoListsSelector extends GuiModalWindow
 	// CONSTANTS
 	//
 	public static final	int		DOBUTTON_ID		= 2000000;
+	public static final	int		SEARCH_ID		= DOBUTTON_ID + 1;
+	private static final	int		LOADING_ID		= SEARCH_ID + 1;
 	public static final	int		MIN_PRESET_ID	= 1000001;
+	// the max. number of matches listed for a search
+	private static final	int		MAX_MATCHES		= 50;
 
 	//
 	// FIELDS
@@ -49,6 +54,7 @@ class GuiTwoListsSelector extends GuiModalWindow
 	private			Integer			selId1, selId2;
 	private			String			selText1, selText2;
 	private final	int				type;
+	private			boolean			freed;		// the window was popped and freed
 
 	public GuiTwoListsSelector(final Plugin plugin, final String title, final GuiCallback callback,
 			final ProtArea area, final int maxLines, final int type)
@@ -83,6 +89,13 @@ class GuiTwoListsSelector extends GuiModalWindow
 		return selected;
 	}
 
+	@Override
+	public void free()
+	{
+		freed	= true;
+		super.free();
+	}
+
 	//********************
 	// HANDLERS
 	//********************
@@ -111,7 +124,11 @@ class GuiTwoListsSelector extends GuiModalWindow
 			if (id == DOBUTTON_ID)
 			{
 				callerCallback.onCall(player, GuiDefs.OK_ID, null);
+				return;
 			}
+			// text entered in the search field (a click on it has no data)
+			if (id == SEARCH_ID && data != null)
+				panel.fillList1(((String)data).trim());
 		}
 	}
 	//********************
@@ -131,18 +148,35 @@ class GuiTwoListsSelector extends GuiModalWindow
 
 	/**
 	 * A private class for the main panel of the GuiTwoListsSelector window.
+	 * <p>The player (or group) list only shows the first MAX_MATCHES names starting
+	 * with the text entered in the search field, looked up in the sorted player
+	 * directory (or in the sorted group names), rather than every known name.
 	 */
 	class TwoListPanel extends GuiGroupStatic
 	{
+		GuiLabel		searchLabel;
+		GuiTextField	searchText;
 		GuiLabel		list1Head;
 		GuiLabel		list2Head;
 		GuiScrollList	list1;
 		GuiScrollList	list2;
+		private final	ProtArea						area;
+		private final	int								listType;
+		// the groups sorted by name, if selecting groups
+		private			List<Entry<Integer,String>>		groups;
+		// the prefix the player list was last filled with
+		private			String							prefix	= "";
 
 		public TwoListPanel(ProtArea area, int maxLines, int type)
 		{
 			super(0);
 			setMargin(GuiDefs.DEFAULT_PADDING);
+			this.area		= area;
+			listType		= type;
+			// The SEARCH field
+			searchLabel	= addTextItem(Msgs.msg[Msgs.gui_searchName], null, null);
+			searchText	= new GuiTextField(0, 0, false, 100, GuiDefs.TEXTENTRY_HEIGHT, false);
+			addChild(searchText, SEARCH_ID, null);
 			// The list HEADINGS
 			list1Head	= addTextItem(
 					Msgs.msg[type == Db.LIST_TYPE_GROUP ? Msgs.gui_selectGroup : Msgs.gui_selectPlayer],
@@ -155,28 +189,28 @@ class GuiTwoListsSelector extends GuiModalWindow
 			list1.setMargin(GuiDefs.DEFAULT_PADDING);
 			if (type == Db.LIST_TYPE_GROUP)
 			{
-				for (Entry<Integer,String> entry : Db.groupNames.entrySet())
-				{
-					int		groupId	= entry.getKey();
-					if (!area.groups.containsKey(groupId))
-					{
-						String	groupName	= entry.getValue();
-						list1.addTextItem(groupName, groupId, groupName);
-					}
-				}
+				groups	= AreaQueries.getGroupsByName();
 			}
-			else
+			else if (!PlayerDirectory.isLoaded())
 			{
-				Set<Integer> playerIds	= Db.getPlayerIdSet();
-				for (Integer id : playerIds)
-				{
-					if (!area.players.containsKey(id))
+				// create all the visible rows now, as they cannot be added once shown,
+				// and fill the list again when the player directory is available,
+				// unless the window has been freed meanwhile
+				for (int i = 0; i < maxLines; i++)
+					list1.addTextItem("", LOADING_ID, null);
+				list1.clearItems();
+				PlayerDirectory.whenLoaded(new Runnable()
 					{
-						String	name	= Db.getPlayerNameFromId(id);
-						list1.addTextItem(name, id, name);
-					}
-				}
+						@Override
+						public void run()
+						{
+							if (!freed)
+								fillList1(prefix);
+						}
+					});
 			}
+			// initially fill with the first names, which also creates all the visible rows
+			fillList1("");
 			// The PRESET LIST
 			list2	= new GuiScrollList(maxLines, true);
 			addChild(list2, null, null);
@@ -205,6 +239,51 @@ class GuiTwoListsSelector extends GuiModalWindow
 			doButton.setClickable(false);
 		}
 
+		/**
+		 * Fills the player (or group) list with the first MAX_MATCHES names starting
+		 * with a prefix, ignoring case, which are not already in the area list.
+		 * @param	prefix	the prefix; if empty, the first names in alphabetic order are listed.
+		 */
+		void fillList1(String prefix)
+		{
+			list1.clearItems();
+			this.prefix	= prefix;
+			int	count	= 0;
+			if (listType == Db.LIST_TYPE_GROUP)
+			{
+				for (Entry<Integer,String> entry : groups)
+				{
+					String	groupName	= entry.getValue();
+					if (count >= MAX_MATCHES)
+						break;
+					if (!groupName.regionMatches(true, 0, prefix, 0, prefix.length())
+							|| AreaQueries.isListed(area, listType, entry.getKey()))
+						continue;
+					list1.addTextItem(groupName, entry.getKey(), groupName);
+					count++;
+				}
+				return;
+			}
+			if (!PlayerDirectory.isLoaded())
+			{
+				list1.addTextItem(Msgs.msg[Msgs.gui_loadingPlayers], LOADING_ID, null);
+				return;
+			}
+			// matching players are contiguous in the sorted directory: start from the first one
+			PlayerDirectory.Snapshot	players	= PlayerDirectory.getDirectory();
+			for (int i = players.findFirst(prefix); i < players.size() && count < MAX_MATCHES
+					&& players.startsWith(i, prefix); i++)
+			{
+				int		id	= players.getId(i);
+				if (!AreaQueries.isListed(area, listType, id))
+				{
+					String	name	= players.getName(i);
+					list1.addTextItem(name, id, name);
+					count++;
+				}
+			}
+		}
+
 		/**
 		 * Arranges the elements inside the panel.
 		 * <p>Called by the layout() method of the GuiModalwindow the panel
@@ -229,8 +308,10 @@ class GuiTwoListsSelector extends GuiModalWindow
 			int	width		= (int)(list1.getWidth()+list2.getWidth()) + 2*margin;
 			if (minWidth > width)
 				width	= minWidth;
-			int	height		= (int)list1.getHeight() + 4*GuiDefs.ITEM_SIZE + 2*padding + 2*margin;
-//						the height of the player list	headings & button	paddings
+			int	height		= (int)list1.getHeight() + 5*GuiDefs.ITEM_SIZE + GuiDefs.TEXTENTRY_HEIGHT
+//						the height of the player list	search, headings & button
+					+ 4*padding + 2*margin;
+//					paddings
 			if (minHeight > height)
 				height	= minHeight;
 			setSize(width, height, false);
@@ -239,6 +320,11 @@ class GuiTwoListsSelector extends GuiModalWindow
 			height		-= margin;								// move below the top margin
 			int	list1X	= margin;
 			int	list2X	= margin+(int)list1.getWidth()+padding;
+			searchLabel.setPosition(list1X, height, false);
+			height	-= GuiDefs.ITEM_SIZE + padding;				// move below the search label
+			searchText.setSize(width - 2*margin, GuiDefs.TEXTENTRY_HEIGHT, false);
+			searchText.setPosition(list1X, height, false);
+			height	-= GuiDefs.TEXTENTRY_HEIGHT + padding;		// move below the search field
 			list1Head.setPosition(list1X, height, false);
 			list2Head.setPosition(list2X, height, false);
 
@@ -0,0 +1,396 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	Jobs.java - A managed background executor for plug-in maintenance work.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.risingworld.api.Timer;
+import net.risingworld.api.callbacks.Callback;
+
+/**
+ * The background executor of the plug-in: the one place where heavy or slow
+ * work (imports, directory scans, DB loads and writes, ...) is run, away from
+ * the server thread.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>Jobs run on virtual threads if the JVM supports them or on a small bounded
+ * pool of daemon threads otherwise. Each job has a type (one of the JOB_ id's),
+ * can be cancelled and can have a completion callback, which is always called
+ * on the server thread: job code proper must never touch players, GUI elements
+ * or other server objects, while callbacks can.
+ * <p>Typical use:
+ * <pre>
+ *	Jobs.submit(Jobs.JOB_..., new Callable&lt;Result&gt;() { ... },
+ *		new Callback&lt;Jobs.Job&lt;Result&gt;&gt;() { ... } );
+ * </pre>
+ */
+class Jobs
+{
+	//
+	// The job types
+	//
+	static final	int		JOB_IMPORT		= 0;		// import of data from other sources
+	static final	int		JOB_GROUPS		= 1;		// scan of the permission group directory
+	static final	int		JOB_PLAYERS		= 2;		// load of player data from the world DB
+	static final	int		JOB_DB			= 3;		// reads and writes of the plug-in DB
+	static final	int		JOB_RECOMPUTE	= 4;		// re-computation of the permissions of online players
+	static final	int		JOB_GENERIC		= 5;		// anything else
+
+	private static final	String[]	jobNames	=
+	{	"import", "groups", "players", "db", "recompute", "generic"	};
+
+	// Constants
+	private static final	int		MAX_POOL_THREADS	= 4;
+	private static final	int		MAX_QUEUED_JOBS		= 256;
+	private static final	long	DRAIN_TIMEOUT_MS	= 5000;
+	private static final	float	COMPLETION_INTERVAL	= 0.05f;	// in seconds
+	// Job states
+	private static final	int		STATE_PENDING		= 0;
+	private static final	int		STATE_RUNNING		= 1;
+	private static final	int		STATE_DONE			= 2;
+
+	// Fields
+	private static			ExecutorService					executor		= null;
+	private static			boolean							virtual			= false;
+	private static			Thread							serverThread	= null;
+	private static			Timer							completionTimer	= null;
+	// the tasks waiting to be run on the server thread
+	private static final	ConcurrentLinkedQueue<Runnable>	serverTasks		= new ConcurrentLinkedQueue<>();
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Creates the executor; to be called on the server thread, from onEnable().
+	 */
+	static void init()
+	{
+		if (executor != null)
+			return;
+		serverThread	= Thread.currentThread();
+		executor		= newVirtualThreadExecutor();
+		virtual			= executor != null;
+		if (executor == null)
+		{
+			int	numOfThreads	= Math.max(1, Math.min(MAX_POOL_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+			executor	= new ThreadPoolExecutor(numOfThreads, numOfThreads, 30, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(MAX_QUEUED_JOBS), new JobThreadFactory());
+			((ThreadPoolExecutor)executor).allowCoreThreadTimeOut(true);
+		}
+		completionTimer	= new Timer(COMPLETION_INTERVAL, COMPLETION_INTERVAL, -1, new Runnable()
+			{
+				@Override
+				public void run()	{ runServerTasks(); }
+			});
+		completionTimer.start();
+	}
+
+	/**
+	 * Shuts the executor down, to be called on the server thread, from onDisable().
+	 * <p>No new job is accepted; queued and running jobs are given some time to
+	 * complete, then they are interrupted. Pending completion callbacks are run
+	 * before returning.
+	 */
+	static void deinit()
+	{
+		if (executor == null)
+			return;
+		executor.shutdown();
+		try
+		{
+			if (!executor.awaitTermination(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+			{
+				executor.shutdownNow();
+				executor.awaitTermination(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		executor	= null;
+		if (completionTimer != null)
+		{
+			completionTimer.kill();
+			completionTimer	= null;
+		}
+		runServerTasks();
+		serverThread	= null;
+	}
+
+	/**
+	 * Submits a job for background execution.
+	 * <p>If the executor is not running or its queue is full, the job is run right away
+	 * on the calling thread, so that submitted work is never lost.
+	 * @param	type		the job type; one of the JOB_ id's.
+	 * @param	task		the work to do.
+	 * @param	callback	called on the server thread once the job is done, failed or has
+	 *						been cancelled; may be null.
+	 * @return	the Job, to check, wait for or cancel it.
+	 */
+	static <T> Job<T> submit(int type, Callable<T> task, Callback<Job<T>> callback)
+	{
+		Job<T>	job	= new Job<>(type, task, callback);
+		ExecutorService	exec	= executor;
+		if (exec != null)
+		{
+			try
+			{
+				job.future	= exec.submit(job);
+				return job;
+			}
+			catch (RejectedExecutionException e)
+			{
+				// fall through and run the job on this thread
+			}
+		}
+		job.run();
+		return job;
+	}
+
+	/**
+	 * Runs a task on the server thread: immediately if called on it, otherwise
+	 * as soon as possible.
+	 * @param	task	the task to run.
+	 */
+	static void runOnServerThread(Runnable task)
+	{
+		if (isServerThread() || serverThread == null)
+			task.run();
+		else
+			serverTasks.add(task);
+	}
+
+	/**
+	 * Returns whether the calling thread is the server thread.
+	 * @return	true if called on the server thread.
+	 */
+	static boolean isServerThread()
+	{
+		return Thread.currentThread() == serverThread;
+	}
+
+	/**
+	 * Returns whether jobs are run on virtual threads.
+	 * @return	true if virtual threads are used, false if a thread pool is used.
+	 */
+	static boolean isVirtual()		{ return virtual; }
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	private static void runServerTasks()
+	{
+		Runnable	task;
+		while ( (task=serverTasks.poll()) != null)
+		{
+			try
+			{
+				task.run();
+			}
+			catch (RuntimeException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns an executor running each job on a new virtual thread or null if the JVM
+	 * does not support them (the plug-in targets Java 8, so the look-up is reflective).
+	 */
+	private static ExecutorService newVirtualThreadExecutor()
+	{
+		try
+		{
+			return (ExecutorService)java.util.concurrent.Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the named daemon threads of the pool.
+	 */
+	private static class JobThreadFactory implements ThreadFactory
+	{
+		private final	AtomicInteger	count	= new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread	thread	= new Thread(r, "AreaProtection-job-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		}
+	}
+
+	//********************
+	// JOB
+	//********************
+
+	/**
+	 * A background job: the work to do, its state and its outcome.
+	 */
+	static class Job<T> implements Runnable
+	{
+		private final	int					type;
+		private final	Callable<T>			task;
+		private final	Callback<Job<T>>	callback;
+		private final	AtomicInteger		state		= new AtomicInteger(STATE_PENDING);
+		private final	CountDownLatch		doneLatch	= new CountDownLatch(1);
+		private volatile	Future<?>		future;
+		private volatile	T				result;
+		private volatile	Throwable		error;
+		private volatile	boolean			cancelled;
+		private volatile	long			runNanos;
+
+		private Job(int type, Callable<T> task, Callback<Job<T>> callback)
+		{
+			this.type		= type;
+			this.task		= task;
+			this.callback	= callback;
+		}
+
+		int			getType()		{ return type;							}
+		String		getName()		{ return jobNames[type];				}
+		/** The result of the job; null if not done yet, failed or cancelled. */
+		T			getResult()		{ return result;						}
+		/** The exception which made the job fail; null if the job did not fail. */
+		Throwable	getError()		{ return error;							}
+		boolean		isCancelled()	{ return cancelled;						}
+		boolean		isDone()		{ return state.get() == STATE_DONE;	}
+		/** The time the job has taken to run, in nanoseconds; 0 if not run. */
+		long		getRunNanos()	{ return runNanos;						}
+
+		/**
+		 * Waits for the job to be done, failed or cancelled.
+		 * <p>Waiting on the server thread stops the server: it should only be done
+		 * while the plug-in is starting up or shutting down.
+		 * @return	the result of the job; null if failed, cancelled or interrupted
+		 *			(getError() tells a failure from a null result).
+		 */
+		T await()
+		{
+			try
+			{
+				doneLatch.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			return result;
+		}
+
+		/**
+		 * Waits for the job like await() and, if the job failed, runs its task once more
+		 * on the calling thread: for the start-up loads the plug-in cannot do without.
+		 * @return	the result of the job or of the second run.
+		 * @throws	IllegalStateException	if the second run fails too.
+		 */
+		T awaitOrRetry()
+		{
+			T	value	= await();
+			if (error == null)
+				return value;
+			System.out.println("** AREA PROTECTION plug-in WARNING: running job '" + getName() + "' again on the calling thread");
+			try
+			{
+				return task.call();
+			}
+			catch (Exception e)
+			{
+				throw new IllegalStateException("AREA PROTECTION: job '" + getName() + "' failed", e);
+			}
+		}
+
+		/**
+		 * Cancels the job. A pending job is not run at all; a running job is interrupted
+		 * and its result, if any, is discarded. In both cases, the callback is still called.
+		 */
+		void cancel()
+		{
+			cancelled	= true;
+			Future<?>	f	= future;
+			if (state.compareAndSet(STATE_PENDING, STATE_DONE))
+			{
+				if (f != null)
+					f.cancel(false);
+				doneLatch.countDown();
+				complete();
+			}
+			else if (f != null && state.get() == STATE_RUNNING)
+				f.cancel(true);
+		}
+
+		@Override
+		public void run()
+		{
+			if (!state.compareAndSet(STATE_PENDING, STATE_RUNNING))
+				return;
+			long	t0	= System.nanoTime();
+			try
+			{
+				T	value	= task.call();
+				if (!cancelled)
+					result	= value;
+			}
+			catch (Throwable e)
+			{
+				if (!cancelled)
+				{
+					error	= e;
+					System.out.println("** AREA PROTECTION plug-in ERROR: job '" + getName() + "' failed: " + e);
+					e.printStackTrace();
+				}
+			}
+			runNanos	= System.nanoTime() - t0;
+			state.set(STATE_DONE);
+			doneLatch.countDown();
+			complete();
+		}
+
+		private void complete()
+		{
+			if (callback == null)
+				return;
+			runOnServerThread(new Runnable()
+				{
+					@Override
+					public void run()	{ callback.onCall(Job.this); }
+				});
+		}
+	}
+}
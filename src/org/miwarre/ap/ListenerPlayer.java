@@ -20,14 +20,16 @@ this plug-in.  If not, see <https://www.gnu.org/licenses/>.
 
 package org.miwarre.ap;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collections;
+import java.util.List;
 import net.risingworld.api.events.Cancellable;
 import net.risingworld.api.events.EventMethod;
 import net.risingworld.api.events.Listener;
 import net.risingworld.api.events.player.PlayerCommandEvent;
 import net.risingworld.api.events.player.PlayerConnectEvent;
+import net.risingworld.api.events.player.PlayerDisconnectEvent;
+import net.risingworld.api.events.player.PlayerEnterChunkEvent;
+import net.risingworld.api.events.player.PlayerKeyEvent;
 import net.risingworld.api.events.player.PlayerEnterAreaEvent;
 import net.risingworld.api.events.player.PlayerLeaveAreaEvent;
 import net.risingworld.api.events.player.PlayerObjectInteractionEvent;
@@ -62,7 +64,6 @@ import net.risingworld.api.gui.GuiLabel;
 import net.risingworld.api.gui.PivotPosition;
 import net.risingworld.api.objects.Player;
 import net.risingworld.api.objects.WorldItem;
-import net.risingworld.api.utils.Definitions.ObjectDefinition;
 import net.risingworld.api.utils.Vector3f;
 
 /**
@@ -72,16 +73,8 @@ class ListenerPlayer implements Listener
 {
 	// Constants
 	public static final		int			INFO_FONT_SIZE	= 16;
-	private static final	int			APPLE_FRUIT_ID	= 46;
-	private static final	int			CHERRY_FRUIT_ID	= 47;
-	private static final	int			LEMON_FRUIT_ID	= 48;
-	private static final	int			TOMATO_FRUIT_ID	= 100;
-	private static final	int			COTTON_FRUIT_ID	= 145;
-	private static final	int			CORN_FRUIT_ID	= 151;
-	private static final	int			CHILI_FRUIT_ID	= 176;
+	private static final	String		CMD_STATS		= "stats";
 	private static final ListenerPlayer ourInstance		= new ListenerPlayer();
-	private static final	Set<Integer> pickables		= new HashSet<Integer>(Arrays.asList(
-		APPLE_FRUIT_ID, CHERRY_FRUIT_ID, LEMON_FRUIT_ID, TOMATO_FRUIT_ID, COTTON_FRUIT_ID, CORN_FRUIT_ID, CHILI_FRUIT_ID));
 
 	public static ListenerPlayer getInstance()		{	return ourInstance;	}
 
@@ -98,9 +91,9 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerConnect(PlayerConnectEvent event)
 	{
+		long	t0		= Stats.start();
 		Player	player	= event.getPlayer();
-		if (event.isNewPlayer())
-			Db.resetPlayers();
+		PlayerDirectory.onPlayerConnect(player, event.isNewPlayer());
 		player.setAttribute(AreaProtection.key_areasShown, false);
 		// The label with the names of the areas
 		GuiLabel	info	= new GuiLabel("", AreaProtection.infoXPos, AreaProtection.infoYPos, false);
@@ -110,7 +103,52 @@ class ListenerPlayer implements Listener
 		info.setPivot(PivotPosition.BottomLeft);
 		player.addGuiElement(info);
 		player.setAttribute(AreaProtection.key_areasText, info);
-		Db.loadPlayer(player);
+		Sessions.open(player);
+		Stats.end(Stats.EV_CONNECT, t0, false);
+	}
+
+	/** Called by Rising World when the player disconnects from the world.
+
+		@param	event	the disconnect event
+	*/
+	@EventMethod
+	public void onPlayerDisconnect(PlayerDisconnectEvent event)
+	{
+		long	t0		= Stats.start();
+		Sessions.close(event.getPlayer());
+		Stats.end(Stats.EV_DISCONNECT, t0, false);
+	}
+
+	/** Called by Rising World when the player moves from a chunk to another.
+
+		@param	event	the enter chunk event
+	*/
+	@EventMethod
+	public void onPlayerEnterChunk(PlayerEnterChunkEvent event)
+	{
+		long	t0		= Stats.start();
+		Player	player	= event.getPlayer();
+		PlayerIndex.move(player, event.getNewChunk());
+		AreaViews.onPlayerMoved(player);
+		// a change of permission group is not notified: check for it here
+		if (GroupIndex.update(player))
+			Recompute.players(Collections.singletonList(player));
+		Stats.end(Stats.EV_ENTERCHUNK, t0, false);
+	}
+
+	/** Called by Rising World when a player presses or releases a key the plug-in listens to.
+		The event is forwarded only to the area creation session of the player, if any.
+
+		@param	event	the key event
+	*/
+	@EventMethod
+	public void onPlayerKey(PlayerKeyEvent event)
+	{
+		long			t0	= Stats.start();
+		NewAreaCreation	nac	= NewAreaCreation.getSession(event.getPlayer());
+		if (nac != null)
+			nac.onKey(event);
+		Stats.end(Stats.EV_KEY, t0, false);
 	}
 
 	/**	Called when the player issues a command ("/...") in the chat window
@@ -120,8 +158,10 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerCommand(PlayerCommandEvent event)
 	{
-		String	cmd		= event.getCommand().split(" ")[0];
-		Player	player	= event.getPlayer();
+		long		t0		= Stats.start();
+		String[]	params	= event.getCommand().split(" ");
+		String		cmd		= params[0];
+		Player		player	= event.getPlayer();
 
 		switch (cmd)
 		{
@@ -133,9 +173,16 @@ class ListenerPlayer implements Listener
 			break;
 		default:
 			if (cmd.equals(AreaProtection.commandPrefix) )
-				AreaProtection.plugin.mainGui(player);
+			{
+				// "/ap stats ..." is reserved to admins
+				if (params.length > 1 && params[1].equals(CMD_STATS) && player.isAdmin())
+					onStatsCommand(player, params.length > 2 ? params[2] : "");
+				else
+					AreaProtection.plugin.mainGui(player);
+			}
 			break;
 		}
+		Stats.end(Stats.EV_COMMAND, t0, false);
 	}
 
 	//
@@ -144,16 +191,20 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerEnterArea(PlayerEnterAreaEvent event)
 	{
-		int	retVal	= Db.onPlayerArea(event.getPlayer(), event.getArea(), true);
+		long	t0		= Stats.start();
+		int		retVal	= Db.onPlayerArea(event.getPlayer(), event.getArea(), true);
 		if (retVal == AreaProtection.ERR_CANNOT_ENTER)
 			event.setCancelled(true);
+		Stats.end(Stats.EV_ENTERAREA, t0, event);
 	}
 	@EventMethod
 	public void onPlayerLeaveArea(PlayerLeaveAreaEvent event)
 	{
-		int	retVal	= Db.onPlayerArea(event.getPlayer(), event.getArea(), false);
+		long	t0		= Stats.start();
+		int		retVal	= Db.onPlayerArea(event.getPlayer(), event.getArea(), false);
 		if (retVal == AreaProtection.ERR_CANNOT_LEAVE)
 			event.setCancelled(true);
+		Stats.end(Stats.EV_LEAVEAREA, t0, event);
 	}
 
 	//
@@ -162,12 +213,12 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerPlaceBlock(PlayerPlaceBlockEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEBLOCKS);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEBLOCKS, Stats.EV_PLACEBLOCK);
 	}
 	@EventMethod
 	public void onPlayerDestroyBlock(PlayerDestroyBlockEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYBLOCKS);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYBLOCKS, Stats.EV_DESTROYBLOCK);
 	}
 
 	//
@@ -176,17 +227,17 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerPlaceConstruction(PlayerPlaceConstructionEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACECONSTR);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACECONSTR, Stats.EV_PLACECONSTR);
 	}
 	@EventMethod
 	public void onPlayerRemoveConstruction(PlayerRemoveConstructionEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_REMOVECONSTR);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_REMOVECONSTR, Stats.EV_REMOVECONSTR);
 	}
 	@EventMethod
 	public void onPlayerDestroyConstruction(PlayerDestroyConstructionEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYCONSTR);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYCONSTR, Stats.EV_DESTROYCONSTR);
 	}
 
 	//
@@ -195,17 +246,17 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerPlaceObject(PlayerPlaceObjectEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEOBJECTS);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEOBJECTS, Stats.EV_PLACEOBJECT);
 	}
 	@EventMethod
 	public void onPlayerRemoveObject(PlayerRemoveObjectEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_REMOVEOBJECTS);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_REMOVEOBJECTS, Stats.EV_REMOVEOBJECT);
 	}
 	@EventMethod
 	public void onPlayerDestroyObject(PlayerDestroyObjectEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYOBJECTS);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYOBJECTS, Stats.EV_DESTROYOBJECT);
 	}
 
 	//
@@ -214,12 +265,12 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerPlaceTerrain(PlayerPlaceTerrainEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACETERRAIN);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACETERRAIN, Stats.EV_PLACETERRAIN);
 	}
 	@EventMethod
 	public void onPlayerDestroyTerrain(PlayerDestroyTerrainEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYTERRAIN);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYTERRAIN, Stats.EV_DESTROYTERRAIN);
 	}
 
 	//
@@ -228,20 +279,19 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerPlaceVegetation(PlayerPlaceVegetationEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEVEGET);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEVEGET, Stats.EV_PLACEVEGET);
 	}
 	@EventMethod
 	public void onPlayerRemoveVegetation(PlayerRemoveVegetationEvent event)
 	{
 		// if picking up some kind fruit while leaving the plant => PERM_REMOVEVEGET
 		// if picking up the plant with the fruit => PERM_DESTROYVEGET
-		onCancellableEvent(event, event.getPlayer(), (pickables.contains(Integer.valueOf(event.getPlantTypeID())) ?
-				AreaProtection.PERM_REMOVEVEGET : AreaProtection.PERM_DESTROYVEGET));
+		onCancellableEvent(event, event.getPlayer(), PermTables.getPlantRemovePerm(event.getPlantTypeID()), Stats.EV_REMOVEVEGET);
 	}
 	@EventMethod
 	public void onPlayerDestroyVegetation(PlayerDestroyVegetationEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYVEGET);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_DESTROYVEGET, Stats.EV_DESTROYVEGET);
 	}
 
 	//
@@ -250,12 +300,12 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerPlaceGrass(PlayerPlaceGrassEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEGRASS);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEGRASS, Stats.EV_PLACEGRASS);
 	}
 	@EventMethod
 	public void onPlayerRemoveGrass(PlayerRemoveGrassEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_REMOVEGRASS);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_REMOVEGRASS, Stats.EV_REMOVEGRASS);
 	}
 
 	//
@@ -264,12 +314,12 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerRemoveWater(PlayerRemoveWaterEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_REMOVEWATER);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_REMOVEWATER, Stats.EV_REMOVEWATER);
 	}
 	@EventMethod
 	public void onPlayerPlaceWater(PlayerPlaceWaterEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEWATER);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PLACEWATER, Stats.EV_PLACEWATER);
 	}
 
 	//
@@ -278,16 +328,20 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerCreateBlueprint(PlayerCreateBlueprintEvent event)
 	{
+		long	t0		= Stats.start();
 		if ( (Db.getPlayerPermissionsForBounding(event.getPlayer(), event.getBoundingInformation())
 				& AreaProtection.PERM_CREATEBLUEPR) == 0)
 			event.setCancelled(true);
+		Stats.end(Stats.EV_CREATEBLUEPR, t0, event);
 	}
 	@EventMethod
 	public void onPlayerPlaceBlueprint(PlayerPlaceBlueprintEvent event)
 	{
+		long	t0		= Stats.start();
 		if ( (Db.getPlayerPermissionsForBounding(event.getPlayer(), event.getBoundingInformation())
 				& AreaProtection.PERM_PLACEBLUEPRINT) == 0)
 			event.setCancelled(true);
+		Stats.end(Stats.EV_PLACEBLUEPR, t0, event);
 	}
 /*	@EventMethod
 	public void onPlayerRemoveBlueprint(PlayerRemoveBlueprintEvent event)
@@ -301,17 +355,17 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerCreativePlaceBlock(PlayerCreativePlaceBlockEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_CREAT_PLACEBLOCKS);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_CREAT_PLACEBLOCKS, Stats.EV_CREAT_PLACEBLOCK);
 	}
 	@EventMethod
 	public void onPlayerCreativePlaceVegetation(PlayerCreativePlaceVegetationEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_CREAT_PLACEVEGET);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_CREAT_PLACEVEGET, Stats.EV_CREAT_PLACEVEGET);
 	}
 	@EventMethod
 	public void onPlayerCreativeTerrainEdit(PlayerCreativeTerrainEditEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_CREAT_TERRAINEDIT);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_CREAT_TERRAINEDIT, Stats.EV_CREAT_TERRAINEDIT);
 	}
 
 	//
@@ -320,18 +374,18 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerInventoryToChest(PlayerInventoryToChestEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PUT2CHEST);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_PUT2CHEST, Stats.EV_INVENTORY2CHEST);
 	}
 	// CHEST-TO-INVENTORY and CHEST-DROP are both taking from chests
 	@EventMethod
 	public void onPlayerChestToInventory(PlayerChestToInventoryEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_GETFROMCHEST);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_GETFROMCHEST, Stats.EV_CHEST2INVENTORY);
 	}
 	@EventMethod
 	public void onPlayerChestDrop(PlayerChestDropEvent event)
 	{
-		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_GETFROMCHEST);
+		onCancellableEvent(event, event.getPlayer(), AreaProtection.PERM_GETFROMCHEST, Stats.EV_CHESTDROP);
 	}
 
 	//
@@ -340,21 +394,13 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onPlayerChangeObjectStatus(PlayerChangeObjectStatusEvent event)
 	{
-		ObjectDefinition	def	= event.getObjectDefinition();
-		long	perm	= def.isDoor() ? AreaProtection.PERM_DOORINTERACT :
-						(def.isFurnace() ? AreaProtection.PERM_FURNACEINTERACT : AreaProtection.PERM_OTHERINTERACT);
-		onCancellableEvent(event, event.getPlayer(), perm);
+		onCancellableEvent(event, event.getPlayer(), PermTables.getObjectStatusPerm(event.getObjectDefinition()), Stats.EV_CHANGEOBJSTATUS);
 	}
 	@EventMethod
 	public void onPlayerObjectInteraction(PlayerObjectInteractionEvent event)
 	{
-		ObjectDefinition	def	= event.getObjectDefinition();
-		long	perm	= def.isDoor() ? AreaProtection.PERM_DOORINTERACT :
-						(def.isFurnace() ? AreaProtection.PERM_FURNACEINTERACT : 
-						// Chests must be interactable if either chest access (to or from) is enabled
-						(def.isChest() ? AreaProtection.PERM_OTHERINTERACT | AreaProtection.PERM_PUT2CHEST | AreaProtection.PERM_GETFROMCHEST
-							: AreaProtection.PERM_OTHERINTERACT));
-		onCancellableEvent(event, event.getPlayer(), perm);
+		// chests must be interactable if either chest access (to or from) is enabled
+		onCancellableEvent(event, event.getPlayer(), PermTables.getObjectInteractionPerm(event.getObjectDefinition()), Stats.EV_OBJINTERACTION);
 	}
 
 	//
@@ -363,13 +409,14 @@ class ListenerPlayer implements Listener
 	@EventMethod
 	public void onExplosion(ExplosionEvent event)
 	{
+		long		t0		= Stats.start();
 		Player		player	= null;
 		WorldItem	item	= event.getRelatedItem();
 		if (item != null)
 			player			= item.getRelatedPlayer();
-		if (player != null &&
-				(Db.getPlayerPermissionsForPoint(player, event.getPosition()) & AreaProtection.PERM_EXPLOSION) == 0)
+		if (player != null && !BlastCheck.isAllowed(player, event.getPosition(), AreaProtection.explosionRadius))
 			event.setCancelled(true);
+		Stats.end(Stats.EV_EXPLOSION, t0, event);
 	}
 
 	//
@@ -377,12 +424,48 @@ class ListenerPlayer implements Listener
 	//
 	// Matches event with actual player permissions
 	//
-	private void onCancellableEvent(Cancellable event, Player player, long permissionFlag)
+	private void onCancellableEvent(Cancellable event, Player player, long permissionFlag, int statId)
 	{
-		if (!AreaProtection.adminNoPriv && (Boolean)player.getAttribute(AreaProtection.key_isAdmin))	// any permission is enabled
-			return;
-		Long	perms	= (Long)player.getAttribute(AreaProtection.key_areaPerms);
-		if (perms != null && (perms & permissionFlag) == 0)
-			event.setCancelled(true);
+		long	t0	= Stats.start();
+		if (AreaProtection.adminNoPriv || !(Boolean)player.getAttribute(AreaProtection.key_isAdmin))	// admins: any permission is enabled
+		{
+			Long	perms	= (Long)player.getAttribute(AreaProtection.key_areaPerms);
+			if (perms != null && (perms & permissionFlag) == 0)
+				event.setCancelled(true);
+		}
+		Stats.end(statId, t0, event);
+	}
+
+	//
+	// Manages the "/ap stats [on | off | reset]" command
+	//
+	private void onStatsCommand(Player player, String param)
+	{
+		switch (param)
+		{
+		case "on":
+			Stats.setEnabled(true);
+			player.sendTextMessage(Msgs.msg[Msgs.txt_statsOn]);
+			break;
+		case "off":
+			Stats.setEnabled(false);
+			player.sendTextMessage(Msgs.msg[Msgs.txt_statsOff]);
+			break;
+		case "reset":
+			Stats.reset();
+			player.sendTextMessage(Msgs.msg[Msgs.txt_statsReset]);
+			break;
+		case "sessions":
+			for (String line : Sessions.report())
+				player.sendTextMessage("[AP] " + line);
+			break;
+		default:
+			List<String>	lines	= Stats.report();
+			player.sendTextMessage(Msgs.msg[Stats.isEnabled() ? Msgs.txt_statsOn : Msgs.txt_statsOff]
+					+ (lines.isEmpty() ? ": " + Msgs.msg[Msgs.txt_statsNoData] : ":"));
+			for (String line : lines)
+				player.sendTextMessage(line);
+			break;
+		}
 	}
 }
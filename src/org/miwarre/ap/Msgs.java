@@ -85,8 +85,18 @@ class Msgs
 	static final	int	gui_setToDefault		= 73;
 	// Other menu title
 	static final int	gui_selectArea			= 74;
+	// Other GUI texts
+	static final	int	gui_searchName			= 75;
+	static final	int	gui_permAll				= 76;
+	static final	int	gui_permNone			= 77;
+	static final	int	gui_loadingPlayers		= 78;
+	// Chat texts
+	static final	int	txt_statsOn				= 79;
+	static final	int	txt_statsOff			= 80;
+	static final	int	txt_statsReset			= 81;
+	static final	int	txt_statsNoData			= 82;
 
-	private static final int	LAST_TEXT	= gui_selectArea;
+	private static final int	LAST_TEXT	= txt_statsNoData;
 
 	//
 	// The default built-in texts, used as fall-back if no message file is found.
@@ -173,7 +183,17 @@ class Msgs
 			"Bottom Height",
 			"Set to default",
 			// other menu titles
-			"Select an Area"
+			"Select an Area",
+			// other GUI texts
+			"Name starts with (RETURN to search):",		// 75
+			"All",
+			"None",
+			"[Loading players...]",
+			// chat texts
+			"[AP] Statistics ON",
+			"[AP] Statistics OFF",						// 80
+			"[AP] Statistics reset",
+			"no data"
 	};
 
 	private static final	String		MSGS_FNAME	= "/locale/messages";
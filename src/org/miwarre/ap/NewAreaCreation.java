@@ -1,7 +1,7 @@
 /****************************
 	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
 
-	NewAreasCreation.java - A Runnable class which manages the creation of a new area
+	NewAreasCreation.java - A per-player state machine which manages the creation of a new area
 
 	Created by : Maurizio M. Gavioli 2017-02-25
 
@@ -25,9 +25,8 @@ package org.miwarre.ap;
 
 import java.util.ArrayList;
 import java.util.List;
+import net.risingworld.api.Timer;
 import net.risingworld.api.callbacks.Callback;
-import net.risingworld.api.events.EventMethod;
-import net.risingworld.api.events.Listener;
 import net.risingworld.api.events.player.PlayerKeyEvent;
 import net.risingworld.api.objects.Player;
 import net.risingworld.api.utils.Area;
@@ -36,87 +35,109 @@ import net.risingworld.api.utils.Vector3f;
 import net.risingworld.api.utils.Utils.ChunkUtils;
 import org.miwarre.ap.gui.*;
 
-class NewAreaCreation extends Thread implements Listener
+/**
+ * A New Area Creation (NAC) session for a player.
+ * <p>The session is a state machine driven by the player key events (routed
+ * by ListenerPlayer to the session of the player pressing the key), by the
+ * area selection data callbacks and by the GuiAreaEdit dialogue box; it uses
+ * no thread of its own. The session of a player is stored in the
+ * key_areaCreation player attribute while active.
+ * <p>Selection data requested by key presses are throttled: at most one request
+ * is waiting for the client at any time and requests are at least
+ * MIN_REQUEST_INTERVAL apart; key presses in between are coalesced into a single
+ * request, sent as soon as allowed, so that holding a key down only costs a few
+ * round trips per second. A one-shot timer is only armed while a request is
+ * queued; a request not answered within REQUEST_TIMEOUT is assumed lost, so
+ * that a lost answer does not block the following requests, and its answer,
+ * if it arrives later, is ignored.
+ */
+class NewAreaCreation
 {
 	// CONSTANTS
-	private static final	int		AREASELECT_ID		= 1;
-	private static final	int		AREAEDIT_ID			= 2;
+	private static final	int		STATE_IDLE			= 0;
+	private static final	int		STATE_SELECTING		= 1;
+	private static final	int		STATE_EDITING		= 2;
+	private static final	int		STATE_DONE			= 3;
+	private static final	int		MIN_REQUEST_INTERVAL= 100;		// ms
+	private static final	int		REQUEST_TIMEOUT		= 2000;		// ms
 
 	// FIELDS
 	private			Vector3f	from, to;
-	private			int			step;
+	private			int			state;
 	private final	Player		player;
-	private			boolean		running;
-	private			boolean		aborted;
 	private			GuiModelessWindow	dataWindow;
+	// selection data requests
+	private			int			requestSeq;			// the sequence number of the latest request
+	private			boolean		requestInFlight;	// a request is waiting for the client answer
+	private			boolean		requestQueued;		// a new request is needed once allowed
+	private			boolean		stopRequested;		// RETURN was pressed: the next answer ends the selection
+	private			long		lastRequestTime;
+	private			Timer		requestTimer;		// sends the queued request; null if not armed
+	private			long		requestTimerDue;
 
 	/**
-	 * Creates a New Area Creation (NAC) thread for player.
-	 * <p>The thread stops when the Area Creation is completed or aborted.
-	 * @param	player	the player this thread is used by.
+	 * Creates a New Area Creation (NAC) session for player.
+	 * <p>The session does nothing until start() is called and ends when the
+	 * area creation is completed or aborted.
+	 * @param	player	the player this session is used by.
 	 */
 	public NewAreaCreation(Player player)
 	{
 		this.player		= player;
+		state			= STATE_IDLE;
 	}
 
-	/** The thread procedure */
-	@Override
-	public void run()
+	//********************
+	// PUBLIC METHODS
+	//********************
+
+	/**
+	 * Starts the session, ending any other session of the same player, and
+	 * enables the area selection tool.
+	 */
+	public void start()
 	{
-		running	= true;
-		aborted	= false;
+		if (state != STATE_IDLE)
+			return;
+		NewAreaCreation	prev	= getSession(player);
+		if (prev != null)
+			prev.end();
+		player.setAttribute(AreaProtection.key_areaCreation, this);
 		List<String>	texts	= new ArrayList<>();
 		texts.add(Msgs.msg[Msgs.gui_areaKeys]);
-		step	= AREASELECT_ID;
 		dataWindow	= new GuiModelessWindow(AreaProtection.plugin, player, Msgs.msg[Msgs.gui_newArea], texts);
-		AreaProtection.plugin.registerEventListener(this);
 		player.registerKeys(KeyInput.KEY_LEFT, KeyInput.KEY_RIGHT, KeyInput.KEY_UP, KeyInput.KEY_DOWN,
 				KeyInput.KEY_SUBTRACT, KeyInput.KEY_ADD, KeyInput.KEY_PGUP, KeyInput.KEY_PGDN,
 				KeyInput.KEY_RETURN, KeyInput.KEY_ESCAPE);
 		player.setListenForKeyInput(true);
-		// enable area selection and wait for selection to be over
+		// enable area selection; the selection goes on until RETURN or ESCAPE are pressed
 		player.enableAreaSelectionTool();
-		while (true)
-		{
-			// give the server some rest during this idle loop!
-			try								{ sleep(100); }
-			catch (InterruptedException e)	{ /* nothing to do! */ }
-			// running is toggled to false when area selection is interrupted
-			// (onKey(), case AREASELECT_ID, sub-case KEY_ESCAPE)
-			// or completed (AreaSizeGetter.onCall())
-			if (!running)
-				break;
-		}
-		player.disableAreaSelectionTool();
-		player.setListenForKeyInput(false);
-		dataWindow.free();
-		dataWindow	= null;
-		// area selection has been aborted; stop
-		if (aborted)
-		{
-			AreaProtection.plugin.unregisterEventListener(this);
-			return;
-		}
-		// show Area Edit dlg box and wait for dlg closed
-		running	= true;
-		step	= AREAEDIT_ID;
-		ProtArea	area		= new ProtArea(from, to, "", AreaProtection.PERM_DEFAULT);
-		GuiAreaEdit	winAreaEdit	= new GuiAreaEdit(this, area, player, GuiAreaEdit.TYPE_CREATE);
-		winAreaEdit.show(player);
-		while (true)
-		{
-			// give the server some more rest!
-			try								{ sleep(100); }
-			catch (InterruptedException e)	{ /* nothing to do! */ }
-			// running is toggled to false by winAreaEdit when area properties
-			// editing is done (either completed or aborted)
-			if (!running)
-				break;
-		}
-		try								{ sleep(100); }
-		catch (InterruptedException e)	{ /* nothing to do! */ }
-		AreaProtection.plugin.unregisterEventListener(this);
+		state	= STATE_SELECTING;
+	}
+
+	/**
+	 * Ends the session, whatever its state, releasing its resources.
+	 * <p>Called by GuiAreaEdit when area properties editing is done (either
+	 * completed or aborted) and when the player disconnects.
+	 */
+	public void end()
+	{
+		if (state == STATE_SELECTING)
+			endSelection();
+		state	= STATE_DONE;
+		if (getSession(player) == this)
+			player.deleteAttribute(AreaProtection.key_areaCreation);
+	}
+
+	/**
+	 * Returns the active session of a player, if any.
+	 * @param	player	the player.
+	 * @return	the session or null if the player is not creating an area.
+	 */
+	static NewAreaCreation getSession(Player player)
+	{
+		Object	session	= player.getAttribute(AreaProtection.key_areaCreation);
+		return session instanceof NewAreaCreation ? (NewAreaCreation)session : null;
 	}
 
 	//********************
@@ -125,17 +146,16 @@ class NewAreaCreation extends Thread implements Listener
 
 	/**
 	 *  Manages key pressed during the area selection phase
-	 * @param	event	The key event being reported
+	 * @param	event	The key event being reported; it is always for the player of this session.
 	 */
-	@EventMethod
-	public void OnKey(PlayerKeyEvent event)
+	public void onKey(PlayerKeyEvent event)
 	{
 		if (!event.isPressed())
 			return;
-		switch (step)
+		switch (state)
 		{
 		// while in AREA SELECTION
-		case AREASELECT_ID:
+		case STATE_SELECTING:
 			switch(event.getKeyCode())
 			{
 			case KeyInput.KEY_LEFT:
@@ -146,18 +166,17 @@ class NewAreaCreation extends Thread implements Listener
 			case KeyInput.KEY_PGUP:
 			case KeyInput.KEY_ADD:
 			case KeyInput.KEY_SUBTRACT:
-				// update the area data in dataWindow, without stopping the thread
-				player.getAreaSelectionData(new AreaSizeGetter(false));
+				// update the area data in dataWindow, going on with the selection
+				requestSelectionData();
 				break;
 			case KeyInput.KEY_RETURN:
-//				running = false;		// NO! Wait for the AreaSizeGetter to return
-				// update the area data in dataWindow, and then stop the thread
-				player.getAreaSelectionData(new AreaSizeGetter(true));
-				aborted	= false;
+				// update the area data in dataWindow, and then go on to area editing
+				// (the state changes only when the AreaSizeGetter returns)
+				stopRequested	= true;
+				requestSelectionData();
 				break;
 			case KeyInput.KEY_ESCAPE:
-				running = false;
-				aborted	= true;
+				end();
 				break;
 			}
 			break;
@@ -165,40 +184,131 @@ class NewAreaCreation extends Thread implements Listener
 	}
 
 	//********************
-	// PUBLIC METHODS
+	// PRIVATE HELPER METHODS
 	//********************
 
-	/*
-	 * Stops the NAC thread.
+	/**
+	 * Turns off area selection and its data window.
 	 */
-	public void stopRun()	{ running	= false; }
+	private void endSelection()
+	{
+		if (requestTimer != null)
+		{
+			requestTimer.kill();
+			requestTimer	= null;
+		}
+		requestQueued	= false;
+		player.disableAreaSelectionTool();
+		player.setListenForKeyInput(false);
+		if (dataWindow != null)
+		{
+			dataWindow.free();
+			dataWindow	= null;
+		}
+	}
 
-	//********************
-	// PRIVATE HELPER METHODS
-	//********************
+	/**
+	 * Asks the client for the current selection, unless a request is already
+	 * waiting for an answer or the last one is too recent: in both cases, the
+	 * request is queued and sent later, by the answer handler or by the timer.
+	 * The final request after RETURN is not delayed by the minimum interval.
+	 */
+	private void requestSelectionData()
+	{
+		long	now		= System.currentTimeMillis();
+		long	elapsed	= now - lastRequestTime;
+		if (requestInFlight && elapsed >= REQUEST_TIMEOUT)
+			requestInFlight	= false;			// the answer got lost: do not wait for it any longer
+		if (requestInFlight || (!stopRequested && elapsed < MIN_REQUEST_INTERVAL))
+		{
+			requestQueued	= true;
+			// if the answer is lost, the handler will not send the request: the timer will
+			scheduleRequest(requestInFlight ? REQUEST_TIMEOUT - elapsed : MIN_REQUEST_INTERVAL - elapsed);
+			return;
+		}
+		requestQueued	= false;
+		requestInFlight	= true;
+		lastRequestTime	= now;
+		player.getAreaSelectionData(new AreaSizeGetter(++requestSeq));
+	}
+
+	/**
+	 * Arms the one-shot timer sending the queued request after a delay, unless
+	 * it is already armed to fire earlier.
+	 * @param	delay	the delay in ms.
+	 */
+	private void scheduleRequest(long delay)
+	{
+		long	due	= System.currentTimeMillis() + delay;
+		if (requestTimer != null)
+		{
+			if (requestTimerDue <= due)
+				return;
+			requestTimer.kill();
+		}
+		requestTimerDue	= due;
+		requestTimer	= new Timer(0, delay / 1000f, 0, new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if (requestTimer != null)
+					{
+						requestTimer.kill();
+						requestTimer	= null;
+					}
+					if (requestQueued && state == STATE_SELECTING)
+						requestSelectionData();
+				}
+			});
+		requestTimer.start();
+	}
+
+	/**
+	 * Ends the area selection and shows the Area Edit dlg box for the selected area;
+	 * the dlg box ends the session once closed.
+	 */
+	private void startEditing()
+	{
+		endSelection();
+		state	= STATE_EDITING;
+		ProtArea	area		= new ProtArea(from, to, "", AreaProtection.PERM_DEFAULT);
+		GuiAreaEdit	winAreaEdit	= new GuiAreaEdit(this, area, player, GuiAreaEdit.TYPE_CREATE);
+		winAreaEdit.show(player);
+	}
 
 	/**
 	 * Handles Player.getAreaSelectionData() notifications.
+	 * <p>Each request has its own handler, tagged with the request sequence number:
+	 * a late answer to a request already assumed lost is ignored, as it would
+	 * otherwise be taken for the answer to the request still waiting.
 	 */
 	private class AreaSizeGetter implements Callback<Area>
 	{
-		private boolean	stopRunning = false;
-
-		/**
-		 * Constructs a new AreaSizeGetter object.
-		 * 
-		 * @param	stopRunning	if true, the NAC thread will be stopped upon receiving
-		 * 						an onCall() notification.
-		 */
-		public AreaSizeGetter(boolean stopRunning)
+		private final	int		seq;
+
+		AreaSizeGetter(int seq)
 		{
-			this.stopRunning	= stopRunning;
+			this.seq	= seq;
 		}
 
 		@Override
 		public void onCall(Area result)
 		{
-			//if result is null, player did not select an area
+			if (seq != requestSeq)
+				return;
+			requestInFlight	= false;
+			// if the state changed meanwhile, the data are no longer needed
+			if (state != STATE_SELECTING)
+				return;
+			// if keys were pressed while waiting, this answer is already old:
+			// ask again (when RETURN was pressed, only the new answer ends the selection)
+			boolean	outdated	= requestQueued;
+			if (outdated)
+				requestSelectionData();
+			// if result is null, player did not select an area: RETURN is ignored
+			if (result == null && !outdated)
+				stopRequested	= false;
 			if(result != null)
 			{
 //				AreaProtection.rearrangeArea(result);
@@ -209,14 +319,14 @@ class NewAreaCreation extends Thread implements Listener
 				texts.add(AreaProtection.getAreaCentre(result));
 				texts.add(AreaProtection.getAreaSpans(result));
 				dataWindow.setTexts(texts);
-				// if asked to stop the thread, store area range and stop it now
-				if (stopRunning)
+				// if asked to stop the selection, store area range and go on to editing
+				if (stopRequested && !outdated)
 				{
 					from	= ChunkUtils.getGlobalPosition(result.getStartChunkPosition(),
 							result.getStartBlockPosition());
 					to		= ChunkUtils.getGlobalPosition(result.getEndChunkPosition(),
 							result.getEndBlockPosition());
-					running = false;
+					startEditing();
 				}
 			}
 		}
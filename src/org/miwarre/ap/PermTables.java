@@ -0,0 +1,189 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	PermTables.java - Look-up tables mapping object and plant types to the permissions they require.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+import net.risingworld.api.utils.Definitions.ObjectDefinition;
+
+/**
+ * Look-up tables mapping each object type and each plant type to the
+ * permission flag(s) required to interact with it.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>Tables are plain arrays of long indexed by type id; an entry of 0 means
+ * "not classified yet": object types are classified from their ObjectDefinition
+ * the first time they are met and then cached, so that the classification is
+ * done only once per type. Any entry can be pre-set by the objects.properties
+ * file, to reclassify objects and plants without changing the code.
+ */
+class PermTables
+{
+	// Constants
+	private static final	String	FNAME				= "/objects.properties";
+	private static final	String	KEY_OBJECT			= "object.";
+	private static final	String	KEY_PLANT			= "plant.";
+	private static final	int		OBJECT_TABLE_SIZE	= 1024;
+	private static final	int		PLANT_TABLE_SIZE	= 256;
+	// The plants whose fruits can be picked without removing the plant;
+	// only used if the objects.properties file cannot be read.
+	private static final	int[]	defPickables		=
+	{
+		46,		// APPLE
+		47,		// CHERRY
+		48,		// LEMON
+		100,	// TOMATO
+		145,	// COTTON
+		151,	// CORN
+		176		// CHILI
+	};
+
+	// Fields
+	private static	long[]	objStatusPerms		= new long[OBJECT_TABLE_SIZE];	// for PlayerChangeObjectStatusEvent
+	private static	long[]	objInteractPerms	= new long[OBJECT_TABLE_SIZE];	// for PlayerObjectInteractionEvent
+	private static	long[]	plantPerms			= new long[PLANT_TABLE_SIZE];	// for PlayerRemoveVegetationEvent
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Initialises the tables from the objects.properties file in the plug-in folder.
+	 * <p>Keys are in the form "object.<i>typeId</i>" or "plant.<i>typeId</i>" and values
+	 * are one or more permission names (as in preset files) separated by commas.
+	 * @param	path	the plug-in path, used to locate the file.
+	 */
+	static void init(String path)
+	{
+		objStatusPerms		= new long[OBJECT_TABLE_SIZE];
+		objInteractPerms	= new long[OBJECT_TABLE_SIZE];
+		plantPerms			= new long[PLANT_TABLE_SIZE];
+		Properties	settings	= new Properties();
+		try (FileInputStream in = new FileInputStream(path + FNAME))
+		{
+			settings.load(in);
+		}
+		catch (IOException e)
+		{
+			// if the file cannot be read, fall back to the built-in pickable plants
+			for (int plantId : defPickables)
+				plantPerms	= setEntry(plantPerms, plantId, AreaProtection.PERM_REMOVEVEGET);
+			return;
+		}
+		for (String key : settings.stringPropertyNames())
+		{
+			long	perms	= AreaProtection.permNamesToFlags(settings.getProperty(key));
+			if (perms == 0)
+				continue;
+			try
+			{
+				if (key.startsWith(KEY_OBJECT))
+				{
+					int	id	= Integer.parseInt(key.substring(KEY_OBJECT.length()).trim());
+					objStatusPerms		= setEntry(objStatusPerms, id, perms);
+					objInteractPerms	= setEntry(objInteractPerms, id, perms);
+				}
+				else if (key.startsWith(KEY_PLANT))
+				{
+					int	id	= Integer.parseInt(key.substring(KEY_PLANT.length()).trim());
+					plantPerms			= setEntry(plantPerms, id, perms);
+				}
+			}
+			catch (NumberFormatException e)
+			{
+				// malformed key: ignore it and go on with the others
+			}
+		}
+	}
+
+	/**
+	 * Returns the permission(s) required to change the status of an object (open/close a door,
+	 * turn a lamp on/off, ...).
+	 * @param	def	the definition of the object.
+	 * @return	the required permission flag(s); any of them grants the action.
+	 */
+	static long getObjectStatusPerm(ObjectDefinition def)
+	{
+		int		id		= def.getID();
+		long	perm;
+		if (id >= 0 && id < objStatusPerms.length && (perm=objStatusPerms[id]) != 0)
+			return perm;
+		perm	= def.isDoor() ? AreaProtection.PERM_DOORINTERACT :
+				(def.isFurnace() ? AreaProtection.PERM_FURNACEINTERACT : AreaProtection.PERM_OTHERINTERACT);
+		objStatusPerms	= setEntry(objStatusPerms, id, perm);
+		return perm;
+	}
+
+	/**
+	 * Returns the permission(s) required to interact with an object.
+	 * @param	def	the definition of the object.
+	 * @return	the required permission flag(s); any of them grants the action.
+	 */
+	static long getObjectInteractionPerm(ObjectDefinition def)
+	{
+		int		id		= def.getID();
+		long	perm;
+		if (id >= 0 && id < objInteractPerms.length && (perm=objInteractPerms[id]) != 0)
+			return perm;
+		perm	= def.isDoor() ? AreaProtection.PERM_DOORINTERACT :
+				(def.isFurnace() ? AreaProtection.PERM_FURNACEINTERACT :
+				// Chests must be interactable if either chest access (to or from) is enabled
+				(def.isChest() ? AreaProtection.PERM_OTHERINTERACT | AreaProtection.PERM_PUT2CHEST | AreaProtection.PERM_GETFROMCHEST
+					: AreaProtection.PERM_OTHERINTERACT));
+		objInteractPerms	= setEntry(objInteractPerms, id, perm);
+		return perm;
+	}
+
+	/**
+	 * Returns the permission required to remove a plant.
+	 * <p>Picking up some kind of fruit while leaving the plant requires PERM_REMOVEVEGET;
+	 * picking up the plant itself requires PERM_DESTROYVEGET.
+	 * @param	plantId	the plant type id.
+	 * @return	the required permission flag(s).
+	 */
+	static long getPlantRemovePerm(int plantId)
+	{
+		long	perm;
+		if (plantId >= 0 && plantId < plantPerms.length && (perm=plantPerms[plantId]) != 0)
+			return perm;
+		return AreaProtection.PERM_DESTROYVEGET;
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	/**
+	 * Stores a value in a table, growing the table if the index is beyond its end.
+	 * @param	table	the table.
+	 * @param	index	the index of the entry; negative indices are ignored.
+	 * @param	value	the value to store.
+	 * @return	the table itself or, if it had to grow, the new table.
+	 */
+	private static long[] setEntry(long[] table, int index, long value)
+	{
+		if (index < 0)
+			return table;
+		if (index >= table.length)
+			table	= Arrays.copyOf(table, Math.max(index + 1, table.length * 2));
+		table[index]	= value;
+		return table;
+	}
+}
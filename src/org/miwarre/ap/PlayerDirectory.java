@@ -0,0 +1,432 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	PlayerDirectory.java - The directory of the players known to the world.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import net.risingworld.api.callbacks.Callback;
+import net.risingworld.api.database.WorldDatabase;
+import net.risingworld.api.objects.Player;
+
+/**
+ * The directory of all the players known to the world, i.e. all the players who
+ * ever connected, for player selectors and for the names of players in area lists.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>The directory is loaded once from the world DB, in the background, and then
+ * kept current as new players connect: it is never reloaded. Each load or update
+ * publishes a new immutable Snapshot, sorted by name, which readers can use
+ * without locking. Readers never wait for the load: until it completes, the
+ * directory is empty and whenLoaded() can be used to update them later.
+ * <p>Player names are looked up in a bounded cache of the names of the players
+ * who connected recently, then in the directory; only while the directory is
+ * not loaded yet, the names are queried from the world DB, all at once.
+ */
+class PlayerDirectory
+{
+	// Constants
+	private static final	int		MAX_CACHED_NAMES	= 1024;
+	// the order of the directory: by name, case-insensitively, then by id
+	private static final	Comparator<Entry>	ENTRY_ORDER	= new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry e1, Entry e2)
+			{
+				int	res	= String.CASE_INSENSITIVE_ORDER.compare(e1.name, e2.name);
+				return res != 0 ? res : Integer.compare(e1.id, e2.id);
+			}
+		};
+
+	private static final	Snapshot	EMPTY	= new Snapshot(new Entry[0]);
+
+	// Fields
+	private static volatile	Snapshot				directory	= null;
+	private static			Jobs.Job<Snapshot>		loadJob		= null;
+	// the players connected for the first time while the directory was loading
+	private static final	List<Entry>				pendingAdds	= new ArrayList<>();
+	// the actions to run once the directory is loaded
+	private static final	List<Runnable>			onLoaded	= new ArrayList<>();
+	// the most recently used names, by player id
+	private static final	Map<Integer,String>		names		=
+			new LinkedHashMap<Integer,String>(MAX_CACHED_NAMES * 4 / 3, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer,String> eldest)
+				{
+					return size() > MAX_CACHED_NAMES;
+				}
+			};
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Starts loading the directory in the background; to be called on the server thread.
+	 */
+	static synchronized void init()
+	{
+		if (directory != null || loadJob != null)
+			return;
+		loadJob	= Jobs.submit(Jobs.JOB_PLAYERS, new Callable<Snapshot>()
+			{
+				@Override
+				public Snapshot call() throws SQLException	{ return load(); }
+			},
+			new Callback<Jobs.Job<Snapshot>>()
+			{
+				@Override
+				public void onCall(Jobs.Job<Snapshot> job)	{ publishLoaded(job); }
+			});
+	}
+
+	/**
+	 * Drops the directory and the cached names.
+	 */
+	static synchronized void deinit()
+	{
+		if (loadJob != null)
+			loadJob.cancel();
+		loadJob		= null;
+		directory	= null;
+		pendingAdds.clear();
+		onLoaded.clear();
+		names.clear();
+	}
+
+	/**
+	 * Returns the directory of all the players known to the world.
+	 * <p>Does not wait for the background load: if it has not completed yet,
+	 * returns an empty Snapshot (see isLoaded() and whenLoaded()); if it failed,
+	 * starts it again.
+	 * @return	the current Snapshot of the directory; never null.
+	 */
+	static Snapshot getDirectory()
+	{
+		Snapshot	snapshot	= directory;
+		if (snapshot != null)
+			return snapshot;
+		init();					// in case the load was never started
+		return EMPTY;
+	}
+
+	/**
+	 * Returns whether the directory has been loaded.
+	 * @return	true if getDirectory() returns the full directory.
+	 */
+	static boolean isLoaded()
+	{
+		return directory != null;
+	}
+
+	/**
+	 * Runs an action once the directory is loaded, on the server thread; if the
+	 * directory is already loaded, runs it at once.
+	 * @param	action	the action to run.
+	 */
+	static void whenLoaded(Runnable action)
+	{
+		synchronized(PlayerDirectory.class)
+		{
+			if (directory == null)
+			{
+				onLoaded.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+
+	/**
+	 * Returns the name of a player from the DB id. The player needs not to be connected.
+	 * @param	playerId	the DB id of the player.
+	 * @return	the player name or null if no such a player id.
+	 */
+	static String getName(int playerId)
+	{
+		String	name	= findName(playerId);
+		if (name != null || directory != null)
+			return name;
+		name	= queryName(playerId);
+		if (name != null)
+			synchronized(names)
+			{
+				names.put(playerId, name);
+			}
+		return name;
+	}
+
+	/**
+	 * Returns the names of several players from their DB id's. The players need not
+	 * to be connected. While the directory is not loaded, the names not cached are
+	 * retrieved with a single query.
+	 * @param	playerIds	the DB id's of the players.
+	 * @return	a Map from player id to player name; players not found are not in it.
+	 */
+	static Map<Integer,String> getNames(Collection<Integer> playerIds)
+	{
+		Map<Integer,String>	result	= new HashMap<>(playerIds.size() * 4 / 3 + 1);
+		List<Integer>		missing	= new ArrayList<>();
+		for (Integer playerId : playerIds)
+		{
+			String	name	= findName(playerId);
+			if (name != null)
+				result.put(playerId, name);
+			else
+				missing.add(playerId);
+		}
+		if (missing.isEmpty() || directory != null)
+			return result;
+		Map<Integer,String>	queried	= queryNames(missing);
+		synchronized(names)
+		{
+			names.putAll(queried);
+		}
+		result.putAll(queried);
+		return result;
+	}
+
+	/**
+	 * Records a player which just connected: its name is cached and, if new to the
+	 * world, the player is added to the directory.
+	 * @param	player		the connecting player.
+	 * @param	isNewPlayer	whether the player connected for the first time.
+	 */
+	static synchronized void onPlayerConnect(Player player, boolean isNewPlayer)
+	{
+		Entry	entry	= new Entry(player.getDbID(), player.getName());
+		if (entry.name == null)
+			return;
+		synchronized(names)
+		{
+			names.put(entry.id, entry.name);
+		}
+		if (!isNewPlayer)
+			return;
+		if (directory != null)
+			directory	= directory.with(entry);
+		else
+			pendingAdds.add(entry);
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	// publishes the result of the background load, on the server thread, and runs
+	// the actions waiting for it; after a failed load, the directory stays unloaded
+	// and the load is started again by the next getDirectory()
+	private static void publishLoaded(Jobs.Job<Snapshot> job)
+	{
+		List<Runnable>	actions;
+		synchronized(PlayerDirectory.class)
+		{
+			if (job != loadJob)
+				return;
+			loadJob	= null;
+			Snapshot	snapshot	= job.getResult();
+			if (snapshot == null)
+			{
+				System.out.println("** AREA PROTECTION plug-in ERROR: the player directory could not be loaded");
+				return;
+			}
+			for (Entry entry : pendingAdds)
+				snapshot	= snapshot.with(entry);
+			pendingAdds.clear();
+			directory	= snapshot;
+			actions		= new ArrayList<>(onLoaded);
+			onLoaded.clear();
+		}
+		for (Runnable action : actions)
+			action.run();
+	}
+
+	/**
+	 * Loads all the players known to the world. Can be run on any thread.
+	 * @throws	SQLException	if the world DB cannot be read.
+	 */
+	private static Snapshot load() throws SQLException
+	{
+		List<Entry>	entries	= new ArrayList<>();
+		// Query world data base for known players
+		WorldDatabase	worldDb = AreaProtection.plugin.getWorldDatabase();
+		try(ResultSet result = worldDb.executeQuery("SELECT `ID`,`Name` FROM `Player`"))
+		{
+			while(result.next())
+			{
+				String	name	= result.getString(2);
+				if (name != null)
+					entries.add(new Entry(result.getInt(1), name));
+			}
+		}
+		Entry[]	array	= entries.toArray(new Entry[entries.size()]);
+		Arrays.sort(array, ENTRY_ORDER);
+		return new Snapshot(array);
+	}
+
+	// the name of a player from the cache of the recent names or from the directory, if loaded
+	private static String findName(int playerId)
+	{
+		synchronized(names)
+		{
+			String	name	= names.get(playerId);
+			if (name != null)
+				return name;
+		}
+		Snapshot	snapshot	= directory;
+		return snapshot != null ? snapshot.findName(playerId) : null;
+	}
+
+	private static Map<Integer,String> queryNames(List<Integer> playerIds)
+	{
+		Map<Integer,String>	found	= new HashMap<>();
+		StringBuilder		query	= new StringBuilder("SELECT `ID`,`Name` FROM `Player` WHERE `ID` IN (");
+		for (int i = 0; i < playerIds.size(); i++)
+			query.append(i > 0 ? "," : "").append(playerIds.get(i).intValue());
+		query.append(')');
+		WorldDatabase	worldDb = AreaProtection.plugin.getWorldDatabase();
+		try(ResultSet result = worldDb.executeQuery(query.toString()))
+		{
+			while (result.next())
+			{
+				String	name	= result.getString(2);
+				if (name != null)
+					found.put(result.getInt(1), name);
+			}
+		}
+		catch(SQLException e)
+		{
+			e.printStackTrace();
+		}
+		return found;
+	}
+
+	private static String queryName(int playerId)
+	{
+		WorldDatabase	worldDb = AreaProtection.plugin.getWorldDatabase();
+		try(ResultSet result = worldDb.executeQuery("SELECT `Name` FROM `Player` WHERE `ID`=" + playerId))
+		{
+			if (result.next())
+				return result.getString(1);
+		}
+		catch(SQLException e)
+		{
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	//********************
+	// SNAPSHOT
+	//********************
+
+	/**
+	 * A player of the directory.
+	 */
+	static class Entry
+	{
+		final	int		id;
+		final	String	name;
+
+		Entry(int id, String name)
+		{
+			this.id		= id;
+			this.name	= name;
+		}
+	}
+
+	/**
+	 * An immutable state of the directory, with the players sorted by name
+	 * and indexed by id.
+	 */
+	static class Snapshot
+	{
+		private final	Entry[]					entries;
+		private final	Map<Integer,String>		namesById;
+
+		private Snapshot(Entry[] entries)
+		{
+			this.entries	= entries;
+			namesById		= new HashMap<>(entries.length * 4 / 3 + 1);
+			for (Entry entry : entries)
+				namesById.put(entry.id, entry.name);
+		}
+
+		int		size()			{ return entries.length;		}
+		int		getId(int i)	{ return entries[i].id;		}
+		String	getName(int i)	{ return entries[i].name;	}
+		/** The name of the player with a DB id; null if not in the directory. */
+		String	findName(int id)	{ return namesById.get(id);	}
+
+		/**
+		 * Returns the index of the first player whose name starts with a prefix,
+		 * ignoring case. The following players with the same prefix are contiguous.
+		 * @param	prefix	the prefix to look for; an empty prefix matches all players.
+		 * @return	the index of the first matching player or size() if none matches.
+		 */
+		int findFirst(String prefix)
+		{
+			// lower bound of the prefix in the case-insensitive order of names
+			int	lo	= 0, hi	= entries.length;
+			while (lo < hi)
+			{
+				int	mid	= (lo + hi) >>> 1;
+				if (String.CASE_INSENSITIVE_ORDER.compare(entries[mid].name, prefix) < 0)
+					lo	= mid + 1;
+				else
+					hi	= mid;
+			}
+			return lo < entries.length && startsWith(lo, prefix) ? lo : entries.length;
+		}
+
+		/**
+		 * Returns whether the name of a player starts with a prefix, ignoring case.
+		 * @param	i		the index of the player.
+		 * @param	prefix	the prefix.
+		 * @return	true if the name starts with the prefix.
+		 */
+		boolean startsWith(int i, String prefix)
+		{
+			return entries[i].name.regionMatches(true, 0, prefix, 0, prefix.length());
+		}
+
+		// a new Snapshot with an added entry, unless already present
+		private Snapshot with(Entry entry)
+		{
+			int		pos		= Arrays.binarySearch(entries, entry, ENTRY_ORDER);
+			if (pos >= 0)
+				return this;
+			pos		= -pos - 1;
+			Entry[]	newEntries	= new Entry[entries.length + 1];
+			System.arraycopy(entries, 0, newEntries, 0, pos);
+			newEntries[pos]	= entry;
+			System.arraycopy(entries, pos, newEntries, pos + 1, entries.length - pos);
+			return new Snapshot(newEntries);
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	PlayerIndex.java - A coarse spatial index of the positions of online players.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.risingworld.api.objects.Player;
+import net.risingworld.api.utils.Area;
+import net.risingworld.api.utils.Utils.ChunkUtils;
+import net.risingworld.api.utils.Vector3f;
+import net.risingworld.api.utils.Vector3i;
+
+/**
+ * A spatial index of online players, keyed by the (x, z) chunk column each
+ * player is in.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>The index is updated when players connect, disconnect and move from one
+ * chunk to another, so it costs nothing while players move within a chunk. It
+ * is used by area mutations (creation, deletion, resizing) to touch only the
+ * players inside or near the affected area, rather than every online player.
+ * <p>Heights are ignored: areas are usually very tall and a column index is
+ * coarse enough to keep the number of cells small.
+ */
+class PlayerIndex
+{
+	// Constants
+	// the number of chunks around an area within which players are considered 'near';
+	// it covers players whose chunk change has not been reported yet
+	private static final	int		NEAR_MARGIN		= 1;
+
+	// Fields
+	// the players in each chunk column
+	private static final	Map<Long,List<Player>>	cells		= new HashMap<>();
+	// the chunk column of each indexed player
+	private static final	Map<Player,Long>		playerCells	= new HashMap<>();
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Adds a player to the index (or moves it, if it is already indexed).
+	 * @param	player	the player to add.
+	 */
+	static synchronized void add(Player player)
+	{
+		Vector3i	chunk	= player.getChunkPosition();
+		if (chunk != null)
+			move(player, chunk);
+	}
+
+	/**
+	 * Records that a player moved into a new chunk.
+	 * @param	player	the player.
+	 * @param	chunk	the chunk position the player is now in.
+	 */
+	static synchronized void move(Player player, Vector3i chunk)
+	{
+		Long	newKey	= key(chunk.x, chunk.z);
+		Long	oldKey	= playerCells.put(player, newKey);
+		if (newKey.equals(oldKey))
+			return;
+		if (oldKey != null)
+			removeFromCell(oldKey, player);
+		List<Player>	cell	= cells.get(newKey);
+		if (cell == null)
+		{
+			cell	= new ArrayList<>(4);
+			cells.put(newKey, cell);
+		}
+		cell.add(player);
+	}
+
+	/**
+	 * Removes a player from the index.
+	 * @param	player	the player to remove.
+	 */
+	static synchronized void remove(Player player)
+	{
+		Long	oldKey	= playerCells.remove(player);
+		if (oldKey != null)
+			removeFromCell(oldKey, player);
+	}
+
+	/**
+	 * Empties the index.
+	 */
+	static synchronized void clear()
+	{
+		cells.clear();
+		playerCells.clear();
+	}
+
+	/**
+	 * Returns the number of indexed players.
+	 * @return	the number of players in the index.
+	 */
+	static synchronized int size()
+	{
+		return playerCells.size();
+	}
+
+	/**
+	 * Returns the online players which are inside or near an area.
+	 * <p>The returned players are candidates: callers still have to check whether
+	 * each of them is actually inside the area.
+	 * @param	area	the area.
+	 * @return	a new List of players; possibly empty, never null.
+	 */
+	static List<Player> getPlayersNear(Area area)
+	{
+		int[]	cols	= getColumnExtent(area);
+		return getPlayersNear(cols[0], cols[1], cols[2], cols[3]);
+	}
+
+	/**
+	 * Returns the online players which are inside or near the part of the world
+	 * covered by exactly one of two areas, i.e. the players whose membership may
+	 * change when an area is resized from the old to the new extent.
+	 * <p>The difference of two boxes is covered by one strip for each side which
+	 * moved, running from the old to the new position of the side, across the
+	 * whole width of both boxes; players in the part common to both boxes are
+	 * not returned. If the vertical extent changed, any player in the columns of
+	 * either box may be affected and all of them are returned.
+	 * @param	oldArea	the area with the old extent.
+	 * @param	newArea	the area with the new extent.
+	 * @return	a new List of players, without duplicates; possibly empty, never null.
+	 */
+	static List<Player> getPlayersNearChange(Area oldArea, Area newArea)
+	{
+		int[]	oldCols	= getColumnExtent(oldArea);
+		int[]	newCols	= getColumnExtent(newArea);
+		float[]	oldPos	= getGlobalExtent(oldArea);
+		float[]	newPos	= getGlobalExtent(newArea);
+		int		fromX	= Math.min(oldCols[0], newCols[0]);
+		int		fromZ	= Math.min(oldCols[1], newCols[1]);
+		int		toX		= Math.max(oldCols[2], newCols[2]);
+		int		toZ		= Math.max(oldCols[3], newCols[3]);
+		if (oldPos[1] != newPos[1] || oldPos[4] != newPos[4])		// vertical extent changed
+			return getPlayersNear(fromX, fromZ, toX, toZ);
+		Set<Player>	players	= new LinkedHashSet<>();
+		if (oldPos[0] != newPos[0])		// min. x side moved
+			players.addAll(getPlayersNear(Math.min(oldCols[0], newCols[0]), fromZ,
+					Math.max(oldCols[0], newCols[0]), toZ));
+		if (oldPos[3] != newPos[3])		// max. x side moved
+			players.addAll(getPlayersNear(Math.min(oldCols[2], newCols[2]), fromZ,
+					Math.max(oldCols[2], newCols[2]), toZ));
+		if (oldPos[2] != newPos[2])		// min. z side moved
+			players.addAll(getPlayersNear(fromX, Math.min(oldCols[1], newCols[1]),
+					toX, Math.max(oldCols[1], newCols[1])));
+		if (oldPos[5] != newPos[5])		// max. z side moved
+			players.addAll(getPlayersNear(fromX, Math.min(oldCols[3], newCols[3]),
+					toX, Math.max(oldCols[3], newCols[3])));
+		return new ArrayList<>(players);
+	}
+
+	/**
+	 * Returns the online players which are inside or near a range of chunk columns.
+	 * @param	fromX	the min. x chunk coordinate of the range.
+	 * @param	fromZ	the min. z chunk coordinate of the range.
+	 * @param	toX		the max. x chunk coordinate of the range.
+	 * @param	toZ		the max. z chunk coordinate of the range.
+	 * @return	a new List of players; possibly empty, never null.
+	 */
+	static synchronized List<Player> getPlayersNear(int fromX, int fromZ, int toX, int toZ)
+	{
+		fromX	-= NEAR_MARGIN;
+		fromZ	-= NEAR_MARGIN;
+		toX		+= NEAR_MARGIN;
+		toZ		+= NEAR_MARGIN;
+		List<Player>	players	= new ArrayList<>();
+		long			numOfCells	= ((long)toX - fromX + 1) * ((long)toZ - fromZ + 1);
+		// for very large ranges, scanning the occupied cells is cheaper than probing each cell of the range
+		if (numOfCells > cells.size())
+		{
+			for (Map.Entry<Player,Long> entry : playerCells.entrySet())
+			{
+				long	key	= entry.getValue();
+				int		x	= (int)(key >> 32);
+				int		z	= (int)key;
+				if (x >= fromX && x <= toX && z >= fromZ && z <= toZ)
+					players.add(entry.getKey());
+			}
+			return players;
+		}
+		for (int x = fromX; x <= toX; x++)
+			for (int z = fromZ; z <= toZ; z++)
+			{
+				List<Player>	cell	= cells.get(key(x, z));
+				if (cell != null)
+					players.addAll(cell);
+			}
+		return players;
+	}
+
+	/**
+	 * Returns all the indexed players.
+	 * @return	a new Collection of players.
+	 */
+	static synchronized Collection<Player> getAllPlayers()
+	{
+		return new ArrayList<>(playerCells.keySet());
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	// the chunk column range of an area, as { minX, minZ, maxX, maxZ }
+	private static int[] getColumnExtent(Area area)
+	{
+		Vector3i	from	= area.getStartChunkPosition();
+		Vector3i	to		= area.getEndChunkPosition();
+		return new int[] { Math.min(from.x, to.x), Math.min(from.z, to.z),
+				Math.max(from.x, to.x), Math.max(from.z, to.z) };
+	}
+
+	// the global extent of an area, as { minX, minY, minZ, maxX, maxY, maxZ }
+	private static float[] getGlobalExtent(Area area)
+	{
+		Vector3f	from	= ChunkUtils.getGlobalPosition(area.getStartChunkPosition(), area.getStartBlockPosition());
+		Vector3f	to		= ChunkUtils.getGlobalPosition(area.getEndChunkPosition(), area.getEndBlockPosition());
+		return new float[] { Math.min(from.x, to.x), Math.min(from.y, to.y), Math.min(from.z, to.z),
+				Math.max(from.x, to.x), Math.max(from.y, to.y), Math.max(from.z, to.z) };
+	}
+
+	private static long key(int x, int z)
+	{
+		return ((long)x << 32) | (z & 0xFFFFFFFFL);
+	}
+
+	private static void removeFromCell(Long key, Player player)
+	{
+		List<Player>	cell	= cells.get(key);
+		if (cell == null)
+			return;
+		cell.remove(player);
+		if (cell.isEmpty())
+			cells.remove(key);
+	}
+}
@@ -20,24 +20,30 @@ this plug-in.  If not, see <https://www.gnu.org/licenses/>.
 
 package org.miwarre.ap;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 import net.risingworld.api.utils.Area;
+import net.risingworld.api.utils.Utils.ChunkUtils;
 import net.risingworld.api.utils.Vector3f;
 import net.risingworld.api.worldelements.WorldArea;
 
 /**
  * A class wrapping the Rising World own Area class to add permission data.
  * <p>All fields are package-accessible for efficiency.
+ * <p>Once in the area registry, an area is not changed in place: a change of name
+ * or permissions replaces it with a copy (see copy()) and a change of the player
+ * or group lists replaces the list with a new unmodifiable map. Readers on any
+ * thread then always see consistent data.
  */
 public class ProtArea extends Area
 {
-	int					id;			// the persistent id of the PermArea
-	Map<Integer,Long>	groups;		// the groups with group-specific permissions for this area and their permissions
-	String				name;		// the name of the PermArea
-	long				permissions;// the default permissions (may be overridden by player-specific permissions)
-	Map<Integer,Long>	players;	// the players with player-specific permissions for this area and their permissions
-	WorldArea			worldArea;	// the associated WorldArea (i.e. the visualisation of the area span)
+	int							id;			// the persistent id of the PermArea
+	volatile Map<Integer,Long>	groups;		// the groups with group-specific permissions for this area and their permissions
+	String						name;		// the name of the PermArea
+	long						permissions;	// the default permissions (may be overridden by player-specific permissions)
+	volatile Map<Integer,Long>	players;	// the players with player-specific permissions for this area and their permissions
+	WorldArea					worldArea;	// the associated WorldArea (i.e. the visualisation of the area span)
 
 	public ProtArea(Vector3f fromF, Vector3f toF)
 	{
@@ -55,6 +61,33 @@ public class ProtArea extends Area
 		initPlayers();
 	}
 
+	/**
+	 * Creates an area with already known player and group permissions, without
+	 * querying the DB for them (used by bulk loads).
+	 */
+	ProtArea(int id, int fromX, int fromY, int fromZ, int toX, int toY, int toZ,
+			String name, long permissions, Map<Integer,Long> players, Map<Integer,Long> groups)
+	{
+		super(new Vector3f(fromX, fromY, fromZ), new Vector3f(toX, toY, toZ));
+		this.id				= id;
+		this.name			= name;
+		this.permissions	= permissions;
+		this.players		= Collections.unmodifiableMap(players);
+		this.groups			= Collections.unmodifiableMap(groups);
+	}
+
+	// a copy with the same extent and lists, for copy()
+	private ProtArea(ProtArea area, String name, long permissions)
+	{
+		super(ChunkUtils.getGlobalPosition(area.getStartChunkPosition(), area.getStartBlockPosition()),
+				ChunkUtils.getGlobalPosition(area.getEndChunkPosition(), area.getEndBlockPosition()));
+		this.id				= area.id;
+		this.name			= name;
+		this.permissions	= permissions;
+		this.players		= area.players;
+		this.groups			= area.groups;
+	}
+
 	public ProtArea(Vector3f fromF, Vector3f toF, String name, long permissions)
 	{
 		super(fromF, toF);
@@ -70,17 +103,30 @@ public class ProtArea extends Area
 	public void setName(String newName)				{	name		= newName;			}
 	public void setPermissions(long newPermissions)	{	permissions	= newPermissions;	}
 
+	/**
+	 * Returns a copy of this area with another name and default permissions, to
+	 * replace it in the area registry. The player and group lists are shared, as
+	 * they are never changed in place.
+	 * @param	newName			the name of the copy.
+	 * @param	newPermissions	the default permissions of the copy.
+	 * @return	the new area.
+	 */
+	ProtArea copy(String newName, long newPermissions)
+	{
+		return new ProtArea(this, newName, newPermissions);
+	}
+
 	private void initPlayers()
 	{
 		if (id != 0)
 		{
-			players	= Db.getAllPlayerPermissionsForArea(id, Db.LIST_TYPE_PLAYER);
-			groups	= Db.getAllPlayerPermissionsForArea(id, Db.LIST_TYPE_GROUP);
+			players	= Collections.unmodifiableMap(Db.getAllPlayerPermissionsForArea(id, Db.LIST_TYPE_PLAYER));
+			groups	= Collections.unmodifiableMap(Db.getAllPlayerPermissionsForArea(id, Db.LIST_TYPE_GROUP));
 		}
 		else
 		{
-			players	= new TreeMap<>();
-			groups	= new TreeMap<>();
+			players	= Collections.unmodifiableMap(new TreeMap<Integer,Long>());
+			groups	= Collections.unmodifiableMap(new TreeMap<Integer,Long>());
 		}
 	}
 
@@ -0,0 +1,283 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	Recompute.java - Schedules the re-computation of the area permissions of many players at once.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import net.risingworld.api.callbacks.Callback;
+import net.risingworld.api.objects.Player;
+
+/**
+ * Re-computes the permissions of online players in the areas they are in,
+ * after a change which may affect many of them at once (admin privileges
+ * toggled, areas deleted, default area permissions changed, ...).
+ * <p>For efficiency and consistency, all methods and data are static; all the
+ * methods must be called on the server thread.
+ * <p>The data of each player and of the areas the players are in are captured
+ * on the server thread; the new permissions are then computed in parallel, by a
+ * fork-join over the players, as pure functions of these copies, which nothing
+ * else changes meanwhile. The results are applied back on the server thread,
+ * in one pass, unless the areas or their ACL's changed meanwhile: then the
+ * players are queued again and re-computed from fresh data.
+ * <p>Requests arriving while a computation is running are merged and handled
+ * by a single further computation once the current one is applied. Small
+ * requests are handled at once, as they are not worth a hand-off.
+ */
+class Recompute
+{
+	// Constants
+	private static final	int		INLINE_THRESHOLD	= 32;	// up to this number of players, compute at once
+	private static final	int		PLAYERS_PER_TASK	= 16;	// the number of players handled by a single fork-join leaf
+
+	// Fields
+	// the players waiting for a re-computation
+	private static final	Set<Player>	pending		= new LinkedHashSet<>();
+	private static			boolean		running		= false;
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Schedules the re-computation of all the online players.
+	 */
+	static void all()
+	{
+		players(AreaProtection.plugin.getServer().getAllPlayers());
+	}
+
+	/**
+	 * Schedules the re-computation of some players.
+	 * @param	players	the players to re-compute.
+	 */
+	static void players(Collection<Player> players)
+	{
+		if (players == null || players.isEmpty())
+			return;
+		pending.addAll(players);
+		if (!running)
+			startNext();
+	}
+
+	/**
+	 * Drops a disconnecting player from the players waiting for a re-computation.
+	 * @param	player	the player.
+	 */
+	static void forget(Player player)
+	{
+		pending.remove(player);
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	private static void startNext()
+	{
+		if (pending.isEmpty())
+			return;
+		final PlayerData[]	data	= new PlayerData[pending.size()];
+		int					i		= 0;
+		for (Player player : pending)
+			data[i++]	= new PlayerData(player);
+		pending.clear();
+		final Map<Integer,AreaData>	snapshot	= captureAreas(data);
+		final int					stamp		= Db.getChangeCount();
+		if (data.length <= INLINE_THRESHOLD)
+		{
+			compute(data, 0, data.length, snapshot);
+			apply(data);
+			return;
+		}
+		running	= true;
+		Jobs.submit(Jobs.JOB_RECOMPUTE, new Callable<Boolean>()
+			{
+				@Override
+				public Boolean call()
+				{
+					ForkJoinPool.commonPool().invoke(new ComputeTask(data, 0, data.length, snapshot));
+					return true;
+				}
+			},
+			new Callback<Jobs.Job<Boolean>>()
+			{
+				@Override
+				public void onCall(Jobs.Job<Boolean> job)
+				{
+					running	= false;
+					if (job.getResult() != null)
+					{
+						// areas or ACL's changed while computing: the results may be stale
+						if (stamp != Db.getChangeCount())
+							requeue(data);
+						else
+							apply(data);
+					}
+					startNext();		// handle the requests arrived in the meantime, if any
+				}
+			});
+	}
+
+	// queues again the players of a computation whose data were changed meanwhile
+	private static void requeue(PlayerData[] data)
+	{
+		for (PlayerData pd : data)
+			if (pd.player.getAttribute(AreaProtection.key_inAreas) != null)	// still connected
+				pending.add(pd.player);
+	}
+
+	// copies the data of the areas the players are in, on the server thread
+	private static Map<Integer,AreaData> captureAreas(PlayerData[] data)
+	{
+		Map<Integer,ProtArea>	registry	= Db.getAreaSnapshot();
+		Map<Integer,AreaData>	areas		= new HashMap<>();
+		for (PlayerData pd : data)
+			for (Integer areaId : pd.inAreaIds)
+			{
+				if (areas.containsKey(areaId))
+					continue;
+				ProtArea	area	= registry.get(areaId);
+				if (area != null)
+					areas.put(areaId, new AreaData(area));
+			}
+		return areas;
+	}
+
+	// computes the new permissions of data[from] ... data[to-1]
+	private static void compute(PlayerData[] data, int from, int to, Map<Integer,AreaData> snapshot)
+	{
+		for (int i = from; i < to; i++)
+		{
+			PlayerData	pd	= data[i];
+			for (Integer areaId : pd.inAreaIds)
+			{
+				AreaData	area	= snapshot.get(areaId);
+				if (area != null)
+					pd.newPerms.put(areaId, Db.resolvePermission(areaId, area.permissions, area.groups,
+							pd.privileged, pd.acl, pd.groupId));
+			}
+		}
+	}
+
+	/**
+	 * Applies the computed permissions to the players, on the server thread.
+	 * <p>As players may have moved meanwhile, permissions are only updated for the
+	 * areas the players are still in; areas entered since the data were captured
+	 * already have up-to-date permissions and areas no longer in the registry are dropped.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void apply(PlayerData[] data)
+	{
+		Map<Integer,ProtArea>	snapshot	= Db.getAreaSnapshot();
+		for (PlayerData pd : data)
+		{
+			Map<Integer,Long>	inAreas	= (Map<Integer,Long>)pd.player.getAttribute(AreaProtection.key_inAreas);
+			if (inAreas == null)
+				continue;				// player disconnected meanwhile
+			inAreas.keySet().retainAll(snapshot.keySet());
+			for (Map.Entry<Integer,Long> entry : pd.newPerms.entrySet())
+				if (inAreas.containsKey(entry.getKey()))
+					inAreas.put(entry.getKey(), entry.getValue());
+			Db.updatePlayerSummary(pd.player, inAreas);
+		}
+	}
+
+	/**
+	 * The data of a player needed to compute its permissions, captured on the server
+	 * thread, and the computed permissions.
+	 */
+	private static class PlayerData
+	{
+		final	Player				player;
+		final	boolean				privileged;
+		final	Integer				groupId;
+		final	Map<Integer,Long>	acl;
+		final	List<Integer>		inAreaIds;
+		final	Map<Integer,Long>	newPerms	= new HashMap<>();
+
+		@SuppressWarnings("unchecked")
+		PlayerData(Player player)
+		{
+			this.player	= player;
+			privileged	= Db.isPrivileged(player);
+			groupId		= Db.getGroupId(player.getPermissionGroup());
+			Map<Integer,Long>	playerAcl	= (Map<Integer,Long>)player.getAttribute(AreaProtection.key_areas);
+			acl			= playerAcl != null ? new HashMap<>(playerAcl) : null;
+			Map<Integer,Long>	inAreas		= (Map<Integer,Long>)player.getAttribute(AreaProtection.key_inAreas);
+			inAreaIds	= inAreas != null ? new ArrayList<>(inAreas.keySet()) : new ArrayList<Integer>(0);
+		}
+	}
+
+	/**
+	 * The data of an area needed to compute the permissions of players inside it,
+	 * captured on the server thread.
+	 */
+	private static class AreaData
+	{
+		final	long				permissions;
+		final	Map<Integer,Long>	groups;
+
+		AreaData(ProtArea area)
+		{
+			permissions	= area.permissions;
+			groups		= area.groups != null ? new HashMap<>(area.groups) : new HashMap<Integer,Long>(0);
+		}
+	}
+
+	/**
+	 * The fork-join task, splitting the players in halves down to PLAYERS_PER_TASK.
+	 */
+	private static class ComputeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final	PlayerData[]			data;
+		private final	int						from, to;
+		private final	Map<Integer,AreaData>	snapshot;
+
+		ComputeTask(PlayerData[] data, int from, int to, Map<Integer,AreaData> snapshot)
+		{
+			this.data		= data;
+			this.from		= from;
+			this.to			= to;
+			this.snapshot	= snapshot;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= PLAYERS_PER_TASK)
+			{
+				Recompute.compute(data, from, to, snapshot);
+				return;
+			}
+			int	middle	= (from + to) >>> 1;
+			invokeAll(new ComputeTask(data, from, middle, snapshot),
+					new ComputeTask(data, middle, to, snapshot));
+		}
+	}
+}
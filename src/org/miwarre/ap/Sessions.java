@@ -0,0 +1,158 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	Sessions.java - The life cycle of the plug-in data of each connected player.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.miwarre.ap.gui.GuiPool;
+import org.miwarre.ap.gui.GuiRouter;
+import net.risingworld.api.gui.GuiLabel;
+import net.risingworld.api.objects.Player;
+
+/**
+ * Opens and closes the plug-in session of each connected player: the player
+ * attributes, the per-player maps and the entries in the plug-in indexes.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>A session is opened when a player connects and closed when it disconnects;
+ * closing a session removes the player from every index and structure referring
+ * to it, so that nothing outlives the connection. The per-player permission maps
+ * are recycled through a small pool, as on a busy server players come and go
+ * all the time.
+ */
+class Sessions
+{
+	// Constants
+	private static final	int		MAX_POOLED_MAPS		= 64;
+
+	// Fields
+	private static final	Set<Player>						live		= new HashSet<>();
+	private static final	ArrayDeque<HashMap<Integer,Long>>	mapPool		= new ArrayDeque<>();
+	private static			long							numOfOpened	= 0;
+	private static			long							numOfClosed	= 0;
+	private static			long							numOfReused	= 0;
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	/**
+	 * Opens the session of a player which just connected.
+	 * @param	player	the player.
+	 */
+	static synchronized void open(Player player)
+	{
+		if (!live.add(player))
+			return;
+		numOfOpened++;
+		Db.loadPlayer(player);
+		PlayerIndex.add(player);
+		GroupIndex.update(player);
+	}
+
+	/**
+	 * Closes the session of a player which is disconnecting, releasing all
+	 * the plug-in data about it.
+	 * @param	player	the player.
+	 */
+	static synchronized void close(Player player)
+	{
+		if (!live.remove(player))
+			return;
+		numOfClosed++;
+		NewAreaCreation	nac	= NewAreaCreation.getSession(player);
+		if (nac != null)
+			nac.end();
+		GuiRouter.removePlayer(player);
+		GuiPool.removePlayer(player);
+		AreaViews.removePlayer(player);
+		PlayerIndex.remove(player);
+		GroupIndex.remove(player);
+		Recompute.forget(player);
+		Db.unloadPlayer(player);
+		GuiLabel	info	= (GuiLabel)player.deleteAttribute(AreaProtection.key_areasText);
+		if (info != null)
+			player.removeGuiElement(info);
+		player.deleteAttribute(AreaProtection.key_areasShown);
+	}
+
+	/**
+	 * Closes the sessions of all the players; to be called when the plug-in is disabled.
+	 */
+	static synchronized void closeAll()
+	{
+		for (Player player : new ArrayList<>(live))
+			close(player);
+		mapPool.clear();
+	}
+
+	/**
+	 * Returns an empty map for per-player area permissions, recycled if possible.
+	 * @return	an empty HashMap.
+	 */
+	static synchronized HashMap<Integer,Long> obtainMap()
+	{
+		HashMap<Integer,Long>	map	= mapPool.poll();
+		if (map == null)
+			return new HashMap<>();
+		numOfReused++;
+		return map;
+	}
+
+	/**
+	 * Returns a per-player map to the pool, once no longer referred to.
+	 * @param	map	the map to recycle; may be null.
+	 */
+	static synchronized void recycleMap(HashMap<Integer,Long> map)
+	{
+		if (map == null || mapPool.size() >= MAX_POOLED_MAPS)
+			return;
+		map.clear();
+		mapPool.push(map);
+	}
+
+	/**
+	 * Returns the number of live sessions.
+	 * @return	the number of players with an open session.
+	 */
+	static synchronized int size()
+	{
+		return live.size();
+	}
+
+	/**
+	 * Reports on the sessions and on the per-player structures.
+	 * <p>Live sessions and index entries should always match: a difference means
+	 * that some player data leaked.
+	 * @return	a List of lines of text.
+	 */
+	static synchronized List<String> report()
+	{
+		List<String>	lines	= new ArrayList<>();
+		lines.add("Live sessions: " + live.size() + " (opened " + numOfOpened + ", closed " + numOfClosed + ")");
+		lines.add("Indexed players: by position " + PlayerIndex.size() + ", by group " + GroupIndex.size()
+				+ ", viewing areas " + AreaViews.size());
+		lines.add("Open GUI windows: " + GuiRouter.size() + ", pooled " + GuiPool.size());
+		lines.add("Pooled maps: " + mapPool.size() + " (reused " + numOfReused + ")");
+		return lines;
+	}
+}
@@ -0,0 +1,253 @@
+/****************************
+	A r e a P r o t e c t i o n  -  A Rising World Java plug-in for area permissions.
+
+	Stats.java - Low-overhead call counters and latency histograms for event handlers.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import net.risingworld.api.events.Cancellable;
+
+/**
+ * Collects, for each instrumented event type, the number of calls, the number
+ * of cancelled events and a latency histogram.
+ * <p>For efficiency and consistency, all methods and data are static.
+ * <p>Histograms are log-linear (as in HDR histograms): each power of two is split
+ * into 2^SUB_BITS linear sub-buckets, giving a relative precision of about 12%
+ * over the whole range of a long. Recording is lock-free (a single atomic increment)
+ * and, when statistics are disabled, costs a single boolean test.
+ * <p>Typical use in a handler:
+ * <pre>
+ *	long	t0	= Stats.start();
+ *	... handle the event ...
+ *	Stats.end(Stats.EV_..., t0, event);
+ * </pre>
+ */
+class Stats
+{
+	//
+	// The ID's of the instrumented event types
+	//
+	static final	int		EV_CONNECT				=  0;
+	static final	int		EV_COMMAND				=  1;
+	static final	int		EV_ENTERAREA			=  2;
+	static final	int		EV_LEAVEAREA			=  3;
+	static final	int		EV_PLACEBLOCK			=  4;
+	static final	int		EV_DESTROYBLOCK			=  5;
+	static final	int		EV_PLACECONSTR			=  6;
+	static final	int		EV_REMOVECONSTR			=  7;
+	static final	int		EV_DESTROYCONSTR		=  8;
+	static final	int		EV_PLACEOBJECT			=  9;
+	static final	int		EV_REMOVEOBJECT			= 10;
+	static final	int		EV_DESTROYOBJECT		= 11;
+	static final	int		EV_PLACETERRAIN			= 12;
+	static final	int		EV_DESTROYTERRAIN		= 13;
+	static final	int		EV_PLACEVEGET			= 14;
+	static final	int		EV_REMOVEVEGET			= 15;
+	static final	int		EV_DESTROYVEGET			= 16;
+	static final	int		EV_PLACEGRASS			= 17;
+	static final	int		EV_REMOVEGRASS			= 18;
+	static final	int		EV_REMOVEWATER			= 19;
+	static final	int		EV_PLACEWATER			= 20;
+	static final	int		EV_CREATEBLUEPR			= 21;
+	static final	int		EV_PLACEBLUEPR			= 22;
+	static final	int		EV_CREAT_PLACEBLOCK		= 23;
+	static final	int		EV_CREAT_PLACEVEGET		= 24;
+	static final	int		EV_CREAT_TERRAINEDIT	= 25;
+	static final	int		EV_INVENTORY2CHEST		= 26;
+	static final	int		EV_CHEST2INVENTORY		= 27;
+	static final	int		EV_CHESTDROP			= 28;
+	static final	int		EV_CHANGEOBJSTATUS		= 29;
+	static final	int		EV_OBJINTERACTION		= 30;
+	static final	int		EV_EXPLOSION			= 31;
+	static final	int		EV_DISCONNECT			= 32;
+	static final	int		EV_ENTERCHUNK			= 33;
+	static final	int		EV_KEY					= 34;
+	static final	int		EV_DB_PLAYERAREA		= 35;
+
+	private static final	int		NUM_OF_EVENTS		= EV_DB_PLAYERAREA + 1;
+
+	// the names of the event types, as used in reports
+	private static final	String[]	evNames	=
+	{
+		"PlayerConnect",			"PlayerCommand",			"PlayerEnterArea",			"PlayerLeaveArea",
+		"PlayerPlaceBlock",			"PlayerDestroyBlock",		"PlayerPlaceConstruction",	"PlayerRemoveConstruction",
+		"PlayerDestroyConstruction","PlayerPlaceObject",		"PlayerRemoveObject",		"PlayerDestroyObject",
+		"PlayerPlaceTerrain",		"PlayerDestroyTerrain",		"PlayerPlaceVegetation",	"PlayerRemoveVegetation",
+		"PlayerDestroyVegetation",	"PlayerPlaceGrass",			"PlayerRemoveGrass",		"PlayerRemoveWater",
+		"PlayerPlaceWater",			"PlayerCreateBlueprint",	"PlayerPlaceBlueprint",		"PlayerCreativePlaceBlock",
+		"PlayerCreativePlaceVeget.","PlayerCreativeTerrainEdit","PlayerInventoryToChest",	"PlayerChestToInventory",
+		"PlayerChestDrop",			"PlayerChangeObjectStatus",	"PlayerObjectInteraction",	"Explosion",
+		"PlayerDisconnect",			"PlayerEnterChunk",			"PlayerKey",				"Db.onPlayerArea"
+	};
+
+	// Histogram geometry
+	private static final	int		SUB_BITS		= 3;
+	private static final	int		SUB_COUNT		= 1 << SUB_BITS;
+	private static final	int		SUB_MASK		= SUB_COUNT - 1;
+	private static final	int		NUM_OF_BUCKETS	= (64 - SUB_BITS + 1) << SUB_BITS;
+	// the value returned by start() when statistics are disabled
+	private static final	long	NOT_TIMED		= Long.MIN_VALUE;
+
+	// Fields
+	private	static volatile	boolean			enabled		= false;
+	private static final	AtomicLongArray	buckets		= new AtomicLongArray(NUM_OF_EVENTS * NUM_OF_BUCKETS);
+	private static final	AtomicLongArray	calls		= new AtomicLongArray(NUM_OF_EVENTS);
+	private static final	AtomicLongArray	cancels		= new AtomicLongArray(NUM_OF_EVENTS);
+	private static final	AtomicLongArray	maxNanos	= new AtomicLongArray(NUM_OF_EVENTS);
+
+	//********************
+	// PROTECTED METHODS
+	//********************
+
+	static boolean	isEnabled()					{ return enabled;	}
+	static void		setEnabled(boolean value)	{ enabled	= value;	}
+
+	/**
+	 * Marks the start of a timed section.
+	 * @return	a time stamp to pass to end(); if statistics are disabled, a marker
+	 *			telling end() to do nothing.
+	 */
+	static long start()
+	{
+		return enabled ? System.nanoTime() : NOT_TIMED;
+	}
+
+	/**
+	 * Marks the end of a timed section, recording one call of the given event type.
+	 * @param	eventId	one of the EV_ id's.
+	 * @param	start	the value returned by start().
+	 * @param	event	the event, to record whether it has been cancelled; may be null
+	 *					for events which cannot be cancelled.
+	 */
+	static void end(int eventId, long start, Cancellable event)
+	{
+		if (start == NOT_TIMED)
+			return;
+		record(eventId, System.nanoTime() - start, event != null && event.isCancelled());
+	}
+
+	/**
+	 * Marks the end of a timed section, recording one call of the given event type.
+	 * @param	eventId		one of the EV_ id's.
+	 * @param	start		the value returned by start().
+	 * @param	cancelled	whether the handled operation has been refused.
+	 */
+	static void end(int eventId, long start, boolean cancelled)
+	{
+		if (start == NOT_TIMED)
+			return;
+		record(eventId, System.nanoTime() - start, cancelled);
+	}
+
+	/**
+	 * Clears all the collected data.
+	 */
+	static void reset()
+	{
+		for (int i = 0; i < buckets.length(); i++)
+			buckets.set(i, 0);
+		for (int i = 0; i < NUM_OF_EVENTS; i++)
+		{
+			calls.set(i, 0);
+			cancels.set(i, 0);
+			maxNanos.set(i, 0);
+		}
+	}
+
+	/**
+	 * Returns a report of the collected data, one line for each event type which
+	 * has been called at least once.
+	 * @return	a List of text lines; empty if no event has been recorded.
+	 */
+	static List<String> report()
+	{
+		List<String>	lines	= new ArrayList<>();
+		for (int i = 0; i < NUM_OF_EVENTS; i++)
+		{
+			long	numOfCalls	= calls.get(i);
+			if (numOfCalls == 0)
+				continue;
+			lines.add(String.format("%-26s calls:%d canc:%d p50:%.1fus p99:%.1fus max:%.1fus",
+					evNames[i], numOfCalls, cancels.get(i),
+					percentile(i, 0.50) / 1000.0, percentile(i, 0.99) / 1000.0, maxNanos.get(i) / 1000.0));
+		}
+		return lines;
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	private static void record(int eventId, long nanos, boolean cancelled)
+	{
+		if (nanos < 0)
+			nanos	= 0;
+		buckets.incrementAndGet(eventId * NUM_OF_BUCKETS + bucketOf(nanos));
+		calls.incrementAndGet(eventId);
+		if (cancelled)
+			cancels.incrementAndGet(eventId);
+		long	max;
+		while (nanos > (max=maxNanos.get(eventId)) && !maxNanos.compareAndSet(eventId, max, nanos))
+			;
+	}
+
+	/**
+	 * Returns the (approximate) value below which the given fraction of the recorded
+	 * values of an event type falls.
+	 */
+	private static long percentile(int eventId, double fraction)
+	{
+		int		base	= eventId * NUM_OF_BUCKETS;
+		long	total	= 0;
+		for (int i = 0; i < NUM_OF_BUCKETS; i++)
+			total	+= buckets.get(base + i);
+		if (total == 0)
+			return 0;
+		long	target	= (long)Math.ceil(total * fraction);
+		long	count	= 0;
+		for (int i = 0; i < NUM_OF_BUCKETS; i++)
+		{
+			count	+= buckets.get(base + i);
+			if (count >= target)
+				return bucketValue(i);
+		}
+		return maxNanos.get(eventId);
+	}
+
+	// values below SUB_COUNT have a bucket each; above, each power of two
+	// has SUB_COUNT buckets
+	private static int bucketOf(long value)
+	{
+		if (value < SUB_COUNT)
+			return (int)value;
+		int	magnitude	= 63 - Long.numberOfLeadingZeros(value);
+		int	sub			= (int)(value >>> (magnitude - SUB_BITS)) & SUB_MASK;
+		return ((magnitude - SUB_BITS + 1) << SUB_BITS) + sub;
+	}
+
+	// the lowest value falling in a bucket
+	private static long bucketValue(int bucket)
+	{
+		if (bucket < SUB_COUNT)
+			return bucket;
+		int	magnitude	= (bucket >>> SUB_BITS) + SUB_BITS - 1;
+		int	sub			= bucket & SUB_MASK;
+		return ((long)(SUB_COUNT + sub)) << (magnitude - SUB_BITS);
+	}
+}
@@ -22,6 +22,10 @@ this plug-in.  If not, see <https://www.gnu.org/licenses/>.
 package org.miwarre.ap.gui;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import org.miwarre.ap.gui.GuiDefs.Pair;
 import net.risingworld.api.gui.GuiElement;
 import net.risingworld.api.gui.GuiImage;
@@ -31,9 +35,25 @@ import net.risingworld.api.gui.GuiTextField;
 import net.risingworld.api.gui.PivotPosition;
 import net.risingworld.api.objects.Player;
 
+/**
+ * A GuiGroup whose children are placed at fixed positions.
+ * <p>Besides the list of children, the group keeps an identity index from each
+ * active element to its id and data, for the elements of this group and of the
+ * static groups nested in it, so that a click is resolved with a single look-up
+ * whatever the number of elements. Nested groups with changing elements (like
+ * GuiScrollList's) cannot be indexed and are asked in turn.
+ */
 public class GuiGroupStatic extends GuiGroup
 {
 	protected	ArrayList<Pair<GuiElement,Pair<Integer,Object>>>	children	= null;
+	// the id and data of the elements of this group and of the nested static groups
+	private final	Map<GuiElement,Pair<Integer,Object>>	elementIndex	= new IdentityHashMap<>();
+	// the direct children, by id
+	private final	Map<Integer,GuiElement>					idIndex			= new HashMap<>();
+	// the nested non-static groups, at any depth
+	private final	List<GuiGroup>							dynamicGroups	= new ArrayList<>(0);
+	// the static group this group is nested in, if any
+	private			GuiGroupStatic							parentGroup		= null;
 
 	public GuiGroupStatic(int flags)
 	{
@@ -103,7 +123,9 @@ public class GuiGroupStatic extends GuiGroup
 			return;
 		if (children == null)
 			children	= new ArrayList<>(4);
-		children.add(new Pair<>(element, new Pair<>(id, data)));
+		Pair<Integer,Object>	itemData	= new Pair<>(id, data);
+		children.add(new Pair<>(element, itemData));
+		addToIndex(element, itemData);
 		if (element instanceof GuiImage)
 			((GuiImage)element).setClickable(id != null);
 		else if (element instanceof GuiLabel)
@@ -145,7 +167,9 @@ public class GuiGroupStatic extends GuiGroup
 		GuiLabel	label	= new GuiLabel(0, 0, false);
 		if (children == null)
 			children	= new ArrayList<>(4);
-		children.add(new Pair<>(label, new Pair<>(id, data)));
+		Pair<Integer,Object>	itemData	= new Pair<>(id, data);
+		children.add(new Pair<>(label, itemData));
+		addToIndex(label, itemData);
 		if (text != null && text.length() > 0)
 			label.setText(text);
 		label.setClickable(id != null);
@@ -182,20 +206,12 @@ public class GuiGroupStatic extends GuiGroup
 	@Override
 	public Pair<Integer, Object> getItemData(GuiElement element)
 	{
-		for (Pair<GuiElement,Pair<Integer, Object>> item : children)
-		{
-			if (item == null)
-				continue;
-			GuiElement	e	= item.getL();
-			if (e instanceof GuiGroup)
-			{
-				Pair<Integer,Object>	data	= ((GuiGroup)e).getItemData(element);
-				if (data != null)
-					return data;
-			}
-			else if (item.getL() == element)
-				return item.getR();
-		}
+		Pair<Integer,Object>	data	= elementIndex.get(element);
+		if (data != null)
+			return data;
+		for (GuiGroup group : dynamicGroups)
+			if ( (data = group.getItemData(element)) != null)
+				return data;
 		return null;
 	}
 
@@ -207,14 +223,7 @@ public class GuiGroupStatic extends GuiGroup
 	@Override
 	public GuiElement getChildFromId(int id)
 	{
-		for (Pair<GuiElement,Pair<Integer, Object>> item : children)
-		{
-			if (item == null)
-				continue;
-			if (item.getR().getL() == id)
-				return item.getL();
-		}
-		return null;
+		return idIndex.get(id);
 	}
 
 	/**
@@ -257,6 +266,47 @@ public class GuiGroupStatic extends GuiGroup
 			super.removeChild(element);
 		}
 		children.clear();
+		elementIndex.clear();
+		idIndex.clear();
+		dynamicGroups.clear();
+	}
+
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	// records a new direct child in the indices of this group and of the enclosing static groups
+	private void addToIndex(GuiElement element, Pair<Integer,Object> itemData)
+	{
+		Integer	id	= itemData.getL();
+		if (id != null && !idIndex.containsKey(id))
+			idIndex.put(id, element);
+		if (element instanceof GuiGroupStatic)
+		{
+			// adopt the elements already in the nested group; later ones are passed up by it
+			GuiGroupStatic	group	= (GuiGroupStatic)element;
+			group.parentGroup	= this;
+			for (Map.Entry<GuiElement,Pair<Integer,Object>> entry : group.elementIndex.entrySet())
+				indexElement(entry.getKey(), entry.getValue());
+			for (GuiGroup dynamicGroup : group.dynamicGroups)
+				indexDynamicGroup(dynamicGroup);
+		}
+		else if (element instanceof GuiGroup)
+			indexDynamicGroup((GuiGroup)element);
+		else
+			indexElement(element, itemData);
+	}
+
+	private void indexElement(GuiElement element, Pair<Integer,Object> itemData)
+	{
+		for (GuiGroupStatic group = this; group != null; group = group.parentGroup)
+			group.elementIndex.put(element, itemData);
+	}
+
+	private void indexDynamicGroup(GuiGroup dynamicGroup)
+	{
+		for (GuiGroupStatic group = this; group != null; group = group.parentGroup)
+			group.dynamicGroups.add(dynamicGroup);
 	}
 
 }
@@ -63,4 +63,14 @@ public class GuiMenu extends GuiModalWindow
 				callback);
 	}
 
+	/**
+	 * Sets the text of a menu item to a new String.
+	 * @param	id		the id of the item to change.
+	 * @param	text	the new text of the item.
+	 */
+	public void setItemText(int id, String text)
+	{
+		((GuiScrollList)_panel).setItemText(id, text);
+	}
+
 }
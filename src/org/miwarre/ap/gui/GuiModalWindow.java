@@ -23,8 +23,6 @@ package org.miwarre.ap.gui;
 import org.miwarre.ap.gui.GuiDefs.GuiCallback;
 import org.miwarre.ap.gui.GuiDefs.Pair;
 import net.risingworld.api.Plugin;
-import net.risingworld.api.events.EventMethod;
-import net.risingworld.api.events.Listener;
 import net.risingworld.api.events.player.gui.PlayerGuiElementClickEvent;
 import net.risingworld.api.events.player.gui.PlayerGuiInputEvent;
 import net.risingworld.api.gui.GuiElement;
@@ -46,8 +44,9 @@ import net.risingworld.api.objects.Player;
  * The main panel is one of the GuiGroup subclasses, with its specific arrangement
  * of children, according to the layoutType of the constructor. To the panel,
  * standard GuiElement's can be added with addChild() and addTextItem().
- * <p>GuiModalWindow manages its own event Listener; it also turns the mouse
- * cursor on on display and off on hiding.
+ * <p>GuiModalWindow receives its events from the GuiRouter, which passes each
+ * event to the window on top of the 'display stack' of the player originating
+ * it; it also turns the mouse cursor on on display and off on hiding.
  * <p>GuiModalWindow manages the close button in the title bar, hiding the box
  * from the player screen, freeing its resources and turning off the mouse cursor.
  * The callback object is notified of a close event by passing an id parameter
@@ -65,20 +64,26 @@ import net.risingworld.api.objects.Player;
  * <p>This class implements a 'display stack' of modal windows: 'pushing' a new
  * window with the push() method displays the new window and 'popping' it,
  * with the pop() method, restores the window previously displayed. 
+ * <p>A window can be made recyclable: it is then never removed from the player
+ * screen nor freed, but only made invisible, when covered by another window
+ * or popped away; once popped, it is kept in the GuiPool of the player, from
+ * which it can be retrieved and shown again with new contents, saving the
+ * creation of all its elements on the client.
  */
-public class GuiModalWindow extends GuiPanel implements Listener
+public class GuiModalWindow extends GuiPanel
 {
 	GuiCallback		_callback;
 	GuiGroup		_panel;
-	int				listenerRef;
 	GuiModalWindow	prevWindow;
 	Plugin			plugin;
 	GuiTitleBar		titleBar;
+	boolean			recyclable;		// whether the window is kept in the player GuiPool once popped
+	boolean			parked;			// whether the window is on the player screen, but invisible
 
 	/**
 	 * Creates a new GuiModalWindow.
 	 * @param	plugin		the plug-in the GuiModalWindow is intended for. This
-	 * 						is only needed to manage the internal event listener
+	 * 						is only needed to register the GUI event router
 	 * 						and has no effects on the plug-in itself.
 	 * @param	title		the text of the title.
 	 * @param	groupType	the type of the main window GuiGroup (one of the GuiDefs.GROUPTYPE_ABSOLUTE
@@ -122,14 +127,16 @@ public class GuiModalWindow extends GuiPanel implements Listener
 		// is overridden to add to the layout
 		titleBar		= new GuiTitleBar(this, title, true);
 		super.addChild(titleBar);
-		listenerRef		= 0;
 	}
 
 	//********************
 	// EVENTS
 	//********************
 
-	@EventMethod
+	/**
+	 * Handles a click event of the player the window is shown to; called by the GuiRouter.
+	 * @param	event	the click event.
+	 */
 	public void onClick(PlayerGuiElementClickEvent event)
 	{
 		if (_callback == null)
@@ -156,7 +163,10 @@ public class GuiModalWindow extends GuiPanel implements Listener
 		}
 	}
 
-	@EventMethod
+	/**
+	 * Handles a text entry event of the player the window is shown to; called by the GuiRouter.
+	 * @param	event	the text entry event.
+	 */
 	public void onTextEntry(PlayerGuiInputEvent event)
 	{
 		if (_callback == null)
@@ -306,12 +316,20 @@ public class GuiModalWindow extends GuiPanel implements Listener
 	 */
 	public void show(Player player)
 	{
+		if (parked)
+		{
+			// the elements are still on the player screen: only make them visible again
+			parked	= false;
+			layout();
+			GuiRouter.setTopWindow(player, this);
+			setVisible(true);
+			player.setMouseCursorVisible(true);
+			return;
+		}
 		layout();
 		titleBar.show(player);
 		_panel.show(player);
-		listenerRef++;
-		if (listenerRef == 1)
-			plugin.registerEventListener(this);
+		GuiRouter.setTopWindow(player, this);
 		player.addGuiElement(this);
 		player.setMouseCursorVisible(true);
 	}
@@ -334,9 +352,7 @@ public class GuiModalWindow extends GuiPanel implements Listener
 		if (_panel != null)
 			_panel.hide(player);
 		player.removeGuiElement(this);
-		listenerRef--;
-		if (listenerRef <= 0)
-			plugin.unregisterEventListener(this);
+		GuiRouter.clearTopWindow(player, this);
 		player.setMouseCursorVisible(false);
 	}
 
@@ -354,7 +370,10 @@ public class GuiModalWindow extends GuiPanel implements Listener
 	 */
 	public void push(Player player, GuiModalWindow win)
 	{
-		hide(player);
+		if (recyclable)
+			park(player);
+		else
+			hide(player);
 		win.prevWindow	= this;
 		win.show(player);
 	}
@@ -372,8 +391,13 @@ public class GuiModalWindow extends GuiPanel implements Listener
 	 */
 	public void pop(Player player)
 	{
-		hide(player);
-		free();
+		if (recyclable)
+			park(player);
+		else
+		{
+			hide(player);
+			free();
+		}
 		if (prevWindow != null)
 		{
 			prevWindow.show(player);
@@ -381,6 +405,11 @@ public class GuiModalWindow extends GuiPanel implements Listener
 		}
 		else
 			player.setMouseCursorVisible(false);
+		if (recyclable)
+		{
+			prevWindow	= null;
+			GuiPool.release(player, this);
+		}
 	}
 
 	/**
@@ -392,12 +421,43 @@ public class GuiModalWindow extends GuiPanel implements Listener
 	 */
 	public void poppush(Player player, GuiModalWindow win)
 	{
-		hide(player);
-		free();
+		if (recyclable)
+			park(player);
+		else
+		{
+			hide(player);
+			free();
+		}
 		if (prevWindow != null)
 			prevWindow.prevWindow	= win;
 		win.show(player);
 		player.setMouseCursorVisible(true);
+		if (recyclable)
+		{
+			prevWindow	= null;
+			GuiPool.release(player, this);
+		}
+	}
+
+	/**
+	 * Sets whether the window is recyclable, i.e. whether, once popped, it is
+	 * kept hidden in the GuiPool of the player, rather than being destroyed.
+	 * @param	value	true to make the window recyclable.
+	 */
+	public void setRecyclable(boolean value)	{ recyclable	= value;	}
+
+	/**
+	 * Removes a recyclable window from the player screen, if still there, and frees it.
+	 * @param	player	the player the window was shown to.
+	 */
+	public void discard(Player player)
+	{
+		if (parked)
+		{
+			parked	= false;
+			hide(player);
+		}
+		free();
 	}
 
 	/**
@@ -449,4 +509,17 @@ public class GuiModalWindow extends GuiPanel implements Listener
 		}
 	}
 
+	//********************
+	// PRIVATE HELPER METHODS
+	//********************
+
+	// makes the window invisible, leaving its elements on the player screen
+	private void park(Player player)
+	{
+		setVisible(false);
+		GuiRouter.clearTopWindow(player, this);
+		player.setMouseCursorVisible(false);
+		parked	= true;
+	}
+
 }
@@ -55,6 +55,8 @@ public class GuiModelessWindow extends GuiPanel
 	//
 	private final	Player		player;
 	private			GuiLabel[]	labels;
+	private			String[]	shownTexts;		// the text currently in each label
+	private			int			panelWidth, panelHeight;
 	private			GuiTitleBar	titleBar;
 
 	/**
@@ -94,6 +96,9 @@ public class GuiModelessWindow extends GuiPanel
 	/**
 	 * Set new texts into the window. Window position, height and width are
 	 * adjusted to the new number and length of the textual strings.
+	 * <p>Only the lines whose text actually changed are updated on the player
+	 * screen, and the window is only resized if its size changes: repeatedly
+	 * setting mostly equal texts costs little.
 	 * 
 	 * @param texts
 	 */
@@ -101,40 +106,68 @@ public class GuiModelessWindow extends GuiPanel
 	{
 		int	numOfTexts	= texts.size();
 		// compute height from number of text lines
-		int	panelHeight	= GuiDefs.TITLE_SIZE + GuiDefs.ITEM_SIZE*texts.size() +
+		int	newHeight	= GuiDefs.TITLE_SIZE + GuiDefs.ITEM_SIZE*texts.size() +
 				GuiDefs.DEFAULT_PADDING*(texts.size()+3);
 
 		// compute width from number of chars in title
-		int panelWidth	= 0;
+		int newWidth	= 0;
 		if (titleBar != null)
-			panelWidth	= titleBar.getMinWidth();
+			newWidth	= titleBar.getMinWidth();
 		// compute width from number of chars in each line of text
 		int	textWidth;
 		for (int i = 0; i < numOfTexts; i++)
-			if ( (textWidth = (int)(GuiDefs.AVG_CHAR_WIDTH1 * texts.get(i).length() * GuiDefs.ITEM_SIZE)) > panelWidth)
-				panelWidth = textWidth;
-		panelWidth	+= 2 * GuiDefs.DEFAULT_PADDING;		// add left and right padding
+			if ( (textWidth = (int)(GuiDefs.AVG_CHAR_WIDTH1 * texts.get(i).length() * GuiDefs.ITEM_SIZE)) > newWidth)
+				newWidth = textWidth;
+		newWidth	+= 2 * GuiDefs.DEFAULT_PADDING;		// add left and right padding
 
-		// Panel size are known: compute position of each item
-		setPosition(PANEL_XPOS, PANEL_YPOS+panelHeight, false);
-		setSize(panelWidth, panelHeight, false);
-		if (titleBar != null)
-			titleBar.relayout();
+		// if the number of lines changed, re-create the labels
+		if (labels == null || labels.length != numOfTexts)
+		{
+			releaseTexts();
+			labels		= new GuiLabel[numOfTexts];
+			shownTexts	= new String[numOfTexts];
+			for (int i = 0; i < numOfTexts; i++)
+			{
+				labels[i]	= new GuiLabel(texts.get(i), TEXT_XPOS, 0, false);
+				labels[i].setPivot(PivotPosition.TopLeft);
+				labels[i].setFontColor(TEXT_COLOUR);
+				labels[i].setFontSize(GuiDefs.ITEM_SIZE);
+				labels[i].setClickable(false);
+				addChild(labels[i]);
+				player.addGuiElement(labels[i]);
+				shownTexts[i]	= texts.get(i);
+			}
+			panelHeight	= 0;						// force a full layout
+		}
+		else
+			for (int i = 0; i < numOfTexts; i++)
+			{
+				String	text	= texts.get(i);
+				if (!text.equals(shownTexts[i]))
+				{
+					labels[i].setText(text);
+					shownTexts[i]	= text;
+				}
+			}
 
-		// The texts
-		releaseTexts();
-		int		yPos	= panelHeight - TEXT_YDELTA;
-		labels			= new GuiLabel[numOfTexts];
-		for (int i = 0; i < numOfTexts; i++)
+		// Panel size are known: compute position of each item, if they changed
+		if (newHeight != panelHeight || newWidth != panelWidth)
 		{
-			labels[i]	= new GuiLabel(texts.get(i), TEXT_XPOS, yPos, false);
-			labels[i].setPivot(PivotPosition.TopLeft);
-			labels[i].setFontColor(TEXT_COLOUR);
-			labels[i].setFontSize(GuiDefs.ITEM_SIZE);
-			labels[i].setClickable(false);
-			addChild(labels[i]);
-			player.addGuiElement(labels[i]);
-			yPos		-= GuiDefs.DEFAULT_PADDING + GuiDefs.ITEM_SIZE;
+			setPosition(PANEL_XPOS, PANEL_YPOS+newHeight, false);
+			setSize(newWidth, newHeight, false);
+			if (titleBar != null)
+				titleBar.relayout();
+			if (newHeight != panelHeight)
+			{
+				int		yPos	= newHeight - TEXT_YDELTA;
+				for (int i = 0; i < numOfTexts; i++)
+				{
+					labels[i].setPosition(TEXT_XPOS, yPos, false);
+					yPos		-= GuiDefs.DEFAULT_PADDING + GuiDefs.ITEM_SIZE;
+				}
+			}
+			panelWidth	= newWidth;
+			panelHeight	= newHeight;
 		}
 	}
 
@@ -167,7 +200,8 @@ public class GuiModelessWindow extends GuiPanel
 				removeChild(labels[i]);
 				labels[i]	= null;
 			}
-			labels	= null;
+			labels		= null;
+			shownTexts	= null;
 		}
 	}
 }
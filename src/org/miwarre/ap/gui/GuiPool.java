@@ -0,0 +1,103 @@
+/****************************
+	A r e a P r o t e c t i o n / g u i  -  A Java package for common GUI functionalities.
+
+	GuiPool.java - Keeps the recyclable windows of each player for reuse.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap.gui;
+
+import java.util.HashMap;
+import java.util.Map;
+import net.risingworld.api.objects.Player;
+
+/**
+ * A pool of the recyclable windows of each player.
+ * <p>Once popped, a recyclable window is not destroyed: its elements are left
+ * on the player screen, invisible, and the window is kept here, one per window
+ * class. The next time a window of the same class is needed for the player,
+ * it can be obtained from the pool, re-bound to new contents and shown again,
+ * without creating any new element on the client.
+ * <p>Windows are kept until the player disconnects, when removePlayer() should
+ * be called to actually destroy them.
+ */
+public class GuiPool
+{
+	// Fields
+	private static final	Map<Player,Map<Class<?>,GuiModalWindow>>	pools	= new HashMap<>();
+
+	private GuiPool()	{ }
+
+	//********************
+	// PUBLIC METHODS
+	//********************
+
+	/**
+	 * Takes a window of the given class out of the pool of a player.
+	 * @param	player	the player.
+	 * @param	type	the class of the window.
+	 * @return	the pooled window or null if the pool has no window of that class.
+	 */
+	public static synchronized <T extends GuiModalWindow> T obtain(Player player, Class<T> type)
+	{
+		Map<Class<?>,GuiModalWindow>	pool	= pools.get(player);
+		if (pool == null)
+			return null;
+		return type.cast(pool.remove(type));
+	}
+
+	/**
+	 * Returns a window to the pool of a player. If the pool already has a window
+	 * of the same class, the one being returned is discarded.
+	 * @param	player	the player.
+	 * @param	window	the window to keep.
+	 */
+	public static synchronized void release(Player player, GuiModalWindow window)
+	{
+		Map<Class<?>,GuiModalWindow>	pool	= pools.get(player);
+		if (pool == null)
+		{
+			pool	= new HashMap<>();
+			pools.put(player, pool);
+		}
+		GuiModalWindow	old		= pool.put(window.getClass(), window);
+		if (old != null && old != window)
+			old.discard(player);
+	}
+
+	/**
+	 * Destroys all the pooled windows of a player; to be called when the player disconnects.
+	 * @param	player	the player.
+	 */
+	public static synchronized void removePlayer(Player player)
+	{
+		Map<Class<?>,GuiModalWindow>	pool	= pools.remove(player);
+		if (pool == null)
+			return;
+		for (GuiModalWindow window : pool.values())
+			window.discard(player);
+	}
+
+	/**
+	 * Returns the number of pooled windows, for all players.
+	 * @return	the number of windows in the pools.
+	 */
+	public static synchronized int size()
+	{
+		int	count	= 0;
+		for (Map<Class<?>,GuiModalWindow> pool : pools.values())
+			count	+= pool.size();
+		return count;
+	}
+}
@@ -0,0 +1,125 @@
+/****************************
+	A r e a P r o t e c t i o n / g u i  -  A Java package for common GUI functionalities.
+
+	GuiRouter.java - Dispatches GUI events to the modal window of each player.
+
+(C) Copyright 2018 Maurizio M. Gavioli (a.k.a. Miwarre)
+This Area Protection plug-in is licensed under the the terms of the GNU General
+Public License as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This Area Protection plug-in is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this plug-in.  If not, see <https://www.gnu.org/licenses/>.
+*****************************/
+
+package org.miwarre.ap.gui;
+
+import java.util.HashMap;
+import java.util.Map;
+import net.risingworld.api.Plugin;
+import net.risingworld.api.events.EventMethod;
+import net.risingworld.api.events.Listener;
+import net.risingworld.api.events.player.gui.PlayerGuiElementClickEvent;
+import net.risingworld.api.events.player.gui.PlayerGuiInputEvent;
+import net.risingworld.api.objects.Player;
+
+/**
+ * The single event listener for all the modal windows of a plug-in.
+ * <p>As only the top window of the 'display stack' of a player is shown, and
+ * can then receive events, the router keeps the top window of each player and
+ * passes each click or text entry event to the top window of the player
+ * originating it only: the cost of an event does not depend on how many
+ * windows are open for other players.
+ * <p>Windows record themselves as top window when shown and remove themselves
+ * when hidden; the router registers itself with the plug-in the first time
+ * a window is shown.
+ */
+public class GuiRouter implements Listener
+{
+	// Fields
+	private static			GuiRouter					instance	= null;
+	private static final	Map<Player,GuiModalWindow>	topWindows	= new HashMap<>();
+
+	private GuiRouter()	{ }
+
+	//********************
+	// EVENTS
+	//********************
+
+	@EventMethod
+	public void onClick(PlayerGuiElementClickEvent event)
+	{
+		GuiModalWindow	window	= topWindows.get(event.getPlayer());
+		if (window != null)
+			window.onClick(event);
+	}
+
+	@EventMethod
+	public void onTextEntry(PlayerGuiInputEvent event)
+	{
+		GuiModalWindow	window	= topWindows.get(event.getPlayer());
+		if (window != null)
+			window.onTextEntry(event);
+	}
+
+	//********************
+	// PUBLIC METHODS
+	//********************
+
+	/**
+	 * Unregisters the router and forgets all the windows; to be called when the
+	 * plug-in is disabled.
+	 * @param	plugin	the plug-in the router was registered with.
+	 */
+	public static void deinit(Plugin plugin)
+	{
+		if (instance != null)
+			plugin.unregisterEventListener(instance);
+		instance	= null;
+		topWindows.clear();
+	}
+
+	/**
+	 * Forgets the window of a player, for instance when the player disconnects.
+	 * @param	player	the player.
+	 */
+	public static void removePlayer(Player player)
+	{
+		topWindows.remove(player);
+	}
+
+	/**
+	 * Returns the number of players with a modal window open.
+	 * @return	the number of players with a top window.
+	 */
+	public static int size()
+	{
+		return topWindows.size();
+	}
+
+	//********************
+	// PACKAGE METHODS
+	//********************
+
+	// records the window shown to a player as the one receiving the player events
+	static void setTopWindow(Player player, GuiModalWindow window)
+	{
+		if (instance == null)
+		{
+			instance	= new GuiRouter();
+			window.plugin.registerEventListener(instance);
+		}
+		topWindows.put(player, window);
+	}
+
+	// forgets the window hidden from a player, if it is the one receiving the player events
+	static void clearTopWindow(Player player, GuiModalWindow window)
+	{
+		if (topWindows.get(player) == window)
+			topWindows.remove(player);
+	}
+}
@@ -21,7 +21,9 @@ this plug-in.  If not, see <https://www.gnu.org/licenses/>.
 package org.miwarre.ap.gui;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.miwarre.ap.gui.GuiDefs.Pair;
 import net.risingworld.api.gui.GuiElement;
 import net.risingworld.api.gui.GuiImage;
@@ -43,6 +45,15 @@ import net.risingworld.api.objects.Player;
  * <p>With a variable height, the scroll list -- and the window it belongs to --
  * has to be laid out again, if the number of items changes after it has been
  * shown to a player. 
+ * <p>Only the visible rows have a GuiLabel, bound to the items in view as the
+ * list scrolls; an index from item id to item position makes look-ups by id
+ * independent from the number of items, so that lists with many thousands
+ * of items remain responsive.
+ * <p>Removed items are left in place as tombstones, so that the positions of
+ * the following items do not change; a LiveIndex finds the n-th remaining item
+ * in logarithmic time and tombstones are compacted away once they outnumber
+ * the remaining items. Adding or removing an item then takes logarithmic time
+ * (amortised), whatever the size of the list.
  */
 public class GuiScrollList extends GuiGroup
 {
@@ -59,7 +70,9 @@ public class GuiScrollList extends GuiGroup
 	private			int				firstItem;			// the index of the first shown item in the list of
 												// all the items;
 	private final	boolean			fixedHeight;		// if true, the height for max NumOfShownItem is always allocated
-	private final	List<Pair<String,Pair<Integer,Object>>>	items;	// the text items and their data
+	private final	List<Pair<String,Pair<Integer,Object>>>	items;	// the text items and their data; null if removed
+	private final	Map<Integer,Integer>	positions;	// the position in items of each item id
+	private final	LiveIndex		live;				// which positions in items are not removed
 	private			int				itemsWidth;			// the max width of the shown items
 	private final	int				maxNumOfShownItems;	// the max number of items to show
 	private			int				numOfItems;			// total number of items in list
@@ -79,6 +92,8 @@ public class GuiScrollList extends GuiGroup
 		this.fixedHeight= fixedHeight;
 		guiItems		= new GuiLabel[maxNumOfShownItems];
 		items			= new ArrayList<>();
+		positions		= new HashMap<>();
+		live			= new LiveIndex();
 		itemsWidth		= 0;
 		numOfItems		= 0;
 		selectedItemId	= SELECTED_ID_NONE;
@@ -132,11 +147,11 @@ public class GuiScrollList extends GuiGroup
 	 */
 	public GuiLabel selectItem(int id)
 	{
-		GuiLabel	label	= (GuiLabel)getChildFromId(selectedItemId);
+		GuiLabel	label	= getLabelForId(selectedItemId);
 		if (label != null)
 			label.setFontColor(GuiDefs.TEXT_COLOUR);
 		selectedItemId	= id;
-		label	= (GuiLabel)getChildFromId(selectedItemId);
+		label	= getLabelForId(selectedItemId);
 		if (label != null)
 			label.setFontColor(GuiDefs.TEXT_SEL_COLOUR);
 		return label;
@@ -166,57 +181,113 @@ public class GuiScrollList extends GuiGroup
 	{
 		Pair<String,Pair<Integer,Object>>	item	= new Pair<>(text, new Pair<>(id,data));
 		items.add(item);
+		live.append();
+		if (id != null)
+			positions.put(id, items.size() - 1);
 		// adjust panel width if new item is longer than current max item width (including left and right padding)
 		int		textWidth;
+		boolean	wider	= false;
 		if ( (textWidth = (int)(GuiDefs.getTextWidth(text, GuiDefs.ITEM_SIZE)))
 				> itemsWidth)
-			itemsWidth = textWidth;
+		{
+			itemsWidth	= textWidth;
+			wider		= true;
+		}
+		boolean	newRow	= false;
 		// if within the max number of items, create a new GuiLabel for the item
+		// (unless one is left from items removed by clearItems())
 		if (numOfItems < maxNumOfShownItems)
 		{
-			guiItems[numOfItems]	= new GuiLabel(0, 0, false);		// temporary position
-			guiItems[numOfItems].setPivot(PivotPosition.TopLeft);
-			guiItems[numOfItems].setFontSize(GuiDefs.ITEM_SIZE);
-			guiItems[numOfItems].setClickable(true);
-			addChild(guiItems[numOfItems]);
+			if (guiItems[numOfItems] == null)
+			{
+				guiItems[numOfItems]	= new GuiLabel(0, 0, false);		// temporary position
+				guiItems[numOfItems].setPivot(PivotPosition.TopLeft);
+				guiItems[numOfItems].setFontSize(GuiDefs.ITEM_SIZE);
+				guiItems[numOfItems].setClickable(true);
+				addChild(guiItems[numOfItems]);
+			}
 			numOfShownItems++;											// one more shown item
+			newRow	= true;
 		}
 		numOfItems++;
-		// if the panel is already shown, update visible items
+		// if the panel is already shown, update visible items: a full layout is only
+		// needed if the list changed size, otherwise at most one row changes
 		if (shown > 0)
 		{
 			// TODO : addGuiElement!
-			layout((int)getWidth(), (int)getHeight());
+			if (wider || (newRow && !fixedHeight))
+				layout((int)getWidth(), (int)getHeight());
+			else
+			{
+				if (newRow)
+				{
+					int	y	= (int)getHeight() - margin - (numOfShownItems-1) * (GuiDefs.ITEM_SIZE+margin);
+					guiItems[numOfShownItems-1].setPosition(margin, y, false);
+				}
+				updateRow(items.size() - 1);
+				updateArrows();
+			}
 		}
 		return null;
 	}
 
+	/**
+	 * Removes the text item with the given id, if any.
+	 * @param	id	the id of the item to remove.
+	 */
 	public void removeTextItem(int id)
 	{
-		int	index	= 0;
-		for (Pair<String,Pair<Integer,Object>> item : items)
+		Integer	index	= getPosition(id);
+		if (index == null)
+			return;
+		// leave a tombstone, rather than moving the following items back
+		items.set(index, null);
+		live.remove(index);
+		positions.remove(id);
+		if (numOfItems <= maxNumOfShownItems)
 		{
-			if (item != null && item.getR().getL() == id)
-			{
-				items.remove(index);
-				if (numOfItems < maxNumOfShownItems)
-				{
-					numOfShownItems--;
-					guiItems[numOfItems-1].setText("");	// clear the last text
-				}
-				numOfItems--;
-				// if the panel is already shown, update visible items
-				if (shown > 0)
-				{
-					// TODO : removeGuiElement!
-					layout((int)getWidth(), (int)getHeight());
-				}
-				return;
-			}
-			index++;
+			numOfShownItems--;
+			guiItems[numOfItems-1].setText("");	// clear the last text
+		}
+		numOfItems--;
+		if (items.size() - numOfItems > numOfItems)
+			compact();
+		// keep the view within the items
+		if (firstItem + numOfShownItems > numOfItems)
+			firstItem	= Math.max(0, numOfItems - numOfShownItems);
+		// if the panel is already shown, update visible items
+		if (shown > 0)
+		{
+			// TODO : removeGuiElement!
+			if (fixedHeight)
+				updateTexts();
+			else
+				layout((int)getWidth(), (int)getHeight());
 		}
 	}
 
+	/**
+	 * Removes all the text items, to fill the list again with addTextItem().
+	 * <p>The GuiLabel's of the visible rows are kept and re-used by the new items:
+	 * as new GuiLabel's cannot be added once the list is shown, a list to be
+	 * re-filled while shown should be first filled with as many items as it
+	 * may need to show.
+	 */
+	public void clearItems()
+	{
+		items.clear();
+		positions.clear();
+		live.clear();
+		for (GuiLabel label : guiItems)
+			if (label != null)
+				label.setText("");
+		firstItem		= 0;
+		numOfItems		= 0;
+		numOfShownItems	= 0;
+		itemsWidth		= 0;
+		updateArrows();
+	}
+
 	/**
 	 * Returns the id associated with element, if element is one of the
 	 * children of the group (recursively); or null otherwise.
@@ -261,9 +332,9 @@ public class GuiScrollList extends GuiGroup
 		{
 			if (guiItem == null)
 				continue;
-			// GuiLabel found: return the corresponding data in items
+			// GuiLabel found: return the corresponding data in items, if the row is in use
 			if (guiItem == element)
-				return items.get(count+firstItem).getR();
+				return count < numOfShownItems ? items.get(live.select(count+firstItem)).getR() : null;
 			count++;
 		}
 		return null;
@@ -281,16 +352,7 @@ public class GuiScrollList extends GuiGroup
 	@Override
 	public GuiElement getChildFromId(int id)
 	{
-		int	count	= 0;
-		for (Pair<String,Pair<Integer, Object>> item : items)
-		{
-			if (item == null)
-				continue;
-			if (item.getR().getL() == id)
-				return guiItems[count - firstItem];
-			count++;
-		}
-		return null;
+		return getLabelForId(id);
 	}
 
 	/**
@@ -300,12 +362,19 @@ public class GuiScrollList extends GuiGroup
 	 */
 	public void setItemText(int id, String newText)
 	{
-		for (Pair<String,Pair<Integer, Object>> item : items)
-			if (item != null && item.getR().getL() == id)
-			{
-				item.setL(newText);
-				return;
-			}
+		Integer	index	= getPosition(id);
+		if (index == null)
+			return;
+		items.get(index).setL(newText);
+		int		textWidth	= (int)GuiDefs.getTextWidth(newText, GuiDefs.ITEM_SIZE);
+		if (textWidth > itemsWidth)
+		{
+			itemsWidth	= textWidth;
+			if (shown > 0)
+				layout((int)getWidth(), (int)getHeight());
+		}
+		else
+			updateRow(index);
 	}
 
 	/**
@@ -446,15 +515,140 @@ public class GuiScrollList extends GuiGroup
 	private void updateTexts()
 	{
 		for (int i = 0; i < numOfShownItems; i++)
+			bindRow(i);
+		updateArrows();
+	}
+
+	// binds the i-th visible row to the item in view at that row
+	private void bindRow(int i)
+	{
+		Pair<String,Pair<Integer,Object>>	item	= items.get(live.select(firstItem+i));
+		guiItems[i].setText(item.getL());
+		Integer	id	= item.getR().getL();
+		if (id != null)
+			guiItems[i].setFontColor(id == selectedItemId ?
+					GuiDefs.TEXT_SEL_COLOUR : GuiDefs.TEXT_COLOUR);
+	}
+
+	// updates the row showing the item at the given position, if the item is in view
+	private void updateRow(int index)
+	{
+		int	row	= live.rank(index) - firstItem;
+		if (row >= 0 && row < numOfShownItems)
+			bindRow(row);
+	}
+
+	// the GuiLabel showing the item with the given id, or null if the item is not in view
+	private GuiLabel getLabelForId(int id)
+	{
+		Integer	index	= getPosition(id);
+		if (index == null)
+			return null;
+		int	row	= live.rank(index) - firstItem;
+		return (row >= 0 && row < numOfShownItems) ? guiItems[row] : null;
+	}
+
+	// the position in items of the item with the given id, or null if none
+	private Integer getPosition(int id)
+	{
+		return positions.get(id);
+	}
+
+	// drops the tombstones, moving the remaining items back
+	private void compact()
+	{
+		int	count	= 0;
+		positions.clear();
+		live.clear();
+		for (int i = 0; i < items.size(); i++)
 		{
-			Pair<String,Pair<Integer,Object>>	item	= items.get(firstItem+i);
-			guiItems[i].setText(item.getL());
-			Integer	id	= item.getR().getL();
-			if (id != null)
-				guiItems[i].setFontColor(id == selectedItemId ?
-						GuiDefs.TEXT_SEL_COLOUR : GuiDefs.TEXT_COLOUR);
+			Pair<String,Pair<Integer,Object>>	item	= items.get(i);
+			if (item == null)
+				continue;
+			items.set(count, item);
+			live.append();
+			Integer	itemId	= item.getR().getL();
+			if (itemId != null)
+				positions.put(itemId, count);
+			count++;
 		}
-		updateArrows();
+		items.subList(count, items.size()).clear();
 	}
 
+	//********************
+	// LIVE INDEX
+	//********************
+
+	/**
+	 * A Fenwick tree over the positions of the items, counting 1 for each item in
+	 * place and 0 for each tombstone: it gives the position of the n-th item and
+	 * the number of items before a position in logarithmic time.
+	 */
+	private static class LiveIndex
+	{
+		private	int[]	tree	= new int[16];	// 1-based; the capacity is tree.length-1
+		private	int		size	= 0;			// the number of positions, items or tombstones
+
+		void clear()
+		{
+			tree	= new int[16];
+			size	= 0;
+		}
+
+		// adds the position of a new item, at the end
+		void append()
+		{
+			if (size + 1 >= tree.length)
+				grow();
+			add(++size, 1);
+		}
+
+		// turns the item at a (0-based) position into a tombstone
+		void remove(int pos)
+		{
+			add(pos + 1, -1);
+		}
+
+		// the number of items before a (0-based) position
+		int rank(int pos)
+		{
+			return prefix(tree, pos);
+		}
+
+		// the (0-based) position of the n-th (0-based) item
+		int select(int n)
+		{
+			int	pos	= 0;
+			for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1)
+				if (pos + step < tree.length && tree[pos + step] <= n)
+				{
+					pos	+= step;
+					n	-= tree[pos];
+				}
+			return pos;
+		}
+
+		private void add(int i, int delta)
+		{
+			for (; i < tree.length; i += i & -i)
+				tree[i]	+= delta;
+		}
+
+		// doubles the capacity, re-entering the value of each position
+		private void grow()
+		{
+			int[]	old	= tree;
+			tree	= new int[old.length * 2];
+			for (int i = 1; i <= size; i++)
+				add(i, prefix(old, i) - prefix(old, i - 1));
+		}
+
+		private static int prefix(int[] tree, int i)
+		{
+			int	sum	= 0;
+			for (; i > 0; i -= i & -i)
+				sum	+= tree[i];
+			return sum;
+		}
+	}
 }